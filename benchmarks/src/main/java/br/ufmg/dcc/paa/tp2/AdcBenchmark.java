@@ -0,0 +1,83 @@
+package br.ufmg.dcc.paa.tp2;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Fases de particionamento do {@link ADC}.
+ * 
+ * @author Wilson de Carvalho
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AdcBenchmark {
+	@Param({ "ERDOS_RENYI", "POWER_LAW", "PLANTED_SYBIL" })
+	public SyntheticGraphs.Type type;
+
+	@Param({ "10000", "100000", "1000000" })
+	public int size;
+
+	private static final int THREADS = Runtime.getRuntime()
+			.availableProcessors();
+
+	private CsrGraph graph;
+	private final ADC adc = new ADC();
+
+	@Setup
+	public void setup() {
+		graph = SyntheticGraphs.generate(type, size, 1);
+	}
+
+	/**
+	 * Particao inicial recriada antes de cada chamada, ja' que processRegions
+	 * a modifica.
+	 */
+	@State(Scope.Thread)
+	public static class InitialPartition {
+		Partition partition;
+
+		@Setup(Level.Invocation)
+		public void setup(AdcBenchmark bench) {
+			partition = bench.adc.createPartition(bench.graph, new Random(1));
+		}
+	}
+
+	/**
+	 * Criacao da particao inicial (antigo createGraphsAB).
+	 */
+	@Benchmark
+	public Partition createPartition() {
+		return adc.createPartition(graph, new Random(1));
+	}
+
+	@Benchmark
+	public double processRegions(InitialPartition state) {
+		return adc.processRegions(state.partition, THREADS);
+	}
+
+	/**
+	 * Estrategia {@link ADC.Engine#SYBIL_RANK}, para comparacao com
+	 * processRegions.
+	 */
+	@Benchmark
+	public double processRanking(InitialPartition state) {
+		return adc.processRanking(state.partition, THREADS);
+	}
+}
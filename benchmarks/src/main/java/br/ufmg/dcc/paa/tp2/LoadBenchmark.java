@@ -0,0 +1,71 @@
+package br.ufmg.dcc.paa.tp2;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import br.ufmg.dcc.paa.tp2.util.GraphReader;
+import br.ufmg.dcc.paa.tp2.util.Tuple2;
+
+/**
+ * Leitura do arquivo de entrada pelos leitores de {@link GraphReader}.
+ * 
+ * @author Wilson de Carvalho
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LoadBenchmark {
+	@Param({ "ERDOS_RENYI", "POWER_LAW", "PLANTED_SYBIL" })
+	public SyntheticGraphs.Type type;
+
+	@Param({ "10000", "100000", "1000000" })
+	public int size;
+
+	private File file;
+
+	@Setup
+	public void setup() throws IOException {
+		file = File.createTempFile("tp2-bench", ".txt");
+		SyntheticGraphs.writeAdjList(SyntheticGraphs.generate(type, size, 1),
+				file);
+	}
+
+	@TearDown
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Benchmark
+	public ArrayList<ArrayList<Integer>> readGraph() {
+		return new GraphReader().readGraph(file.getPath());
+	}
+
+	@Benchmark
+	public Tuple2<int[], int[]> readGraphMapped() {
+		return new GraphReader().readGraphMapped(file.getPath());
+	}
+
+	@Benchmark
+	public Tuple2<int[], int[]> readGraphParallel() {
+		return new GraphReader().readGraphParallel(file.getPath(), Runtime
+				.getRuntime().availableProcessors());
+	}
+}
@@ -0,0 +1,58 @@
+package br.ufmg.dcc.paa.tp2;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Metricas de {@link Graph} e {@link CsrGraph}.
+ * 
+ * @author Wilson de Carvalho
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MetricsBenchmark {
+	@Param({ "ERDOS_RENYI", "POWER_LAW", "PLANTED_SYBIL" })
+	public SyntheticGraphs.Type type;
+
+	@Param({ "10000", "100000", "1000000" })
+	public int size;
+
+	private CsrGraph csrGraph;
+	private Graph graph;
+
+	@Setup
+	public void setup() {
+		csrGraph = SyntheticGraphs.generate(type, size, 1);
+		graph = SyntheticGraphs.toGraph(csrGraph);
+	}
+
+	@Benchmark
+	public float clustCoeficient() {
+		return graph.clustCoeficient();
+	}
+
+	@Benchmark
+	public float csrClustCoeficient() {
+		return csrGraph.clustCoeficient();
+	}
+
+	@Benchmark
+	public int getEdgeCount() {
+		return graph.getEdgeCount();
+	}
+}
@@ -0,0 +1,156 @@
+package br.ufmg.dcc.paa.tp2;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+
+/**
+ * Geradores de grafos sinteticos para os benchmarks.
+ * 
+ * @author Wilson de Carvalho
+ */
+public class SyntheticGraphs {
+	// Grau medio dos grafos gerados
+	public static final int AVG_DEGREE = 10;
+
+	public enum Type {
+		// G(n, m) com m = n * AVG_DEGREE / 2 arestas uniformes
+		ERDOS_RENYI,
+		// Anexacao preferencial (Barabasi-Albert), com graus em lei de
+		// potencia
+		POWER_LAW,
+		// Regiao honesta (90%) e regiao Sybil (10%), ambas G(n, m), ligadas
+		// por poucas arestas de ataque
+		PLANTED_SYBIL
+	}
+
+	/**
+	 * Gera um grafo nao direcionado com n vertices.
+	 * 
+	 * @param type
+	 *            Modelo do grafo.
+	 * @param n
+	 *            Numero de vertices.
+	 * @param seed
+	 *            Semente aleatoria.
+	 * @return Grafo CSR.
+	 */
+	public static CsrGraph generate(Type type, int n, long seed) {
+		Random r = new Random(seed);
+		int m = (int) ((long) n * AVG_DEGREE / 2);
+		int[] src = new int[m];
+		int[] dst = new int[m];
+		switch (type) {
+		case ERDOS_RENYI:
+			randomEdges(r, src, dst, 0, m, 0, n);
+			break;
+		case POWER_LAW:
+			preferentialAttachment(r, src, dst, n);
+			break;
+		case PLANTED_SYBIL:
+			int honest = n - n / 10;
+			int attack = Math.max(1, n / 100);
+			int honestEdges = (int) ((long) (m - attack) * honest / n);
+			randomEdges(r, src, dst, 0, honestEdges, 0, honest);
+			randomEdges(r, src, dst, honestEdges, m - attack, honest, n);
+			for (int i = m - attack; i < m; i++) {
+				src[i] = r.nextInt(honest);
+				dst[i] = honest + r.nextInt(n - honest);
+			}
+			break;
+		}
+		return toCsr(n, src, dst);
+	}
+
+	private static void randomEdges(Random r, int[] src, int[] dst,
+			int from, int to, int low, int high) {
+		for (int i = from; i < to; i++) {
+			src[i] = low + r.nextInt(high - low);
+			dst[i] = low + r.nextInt(high - low);
+		}
+	}
+
+	/**
+	 * Cada novo vertice liga-se a AVG_DEGREE / 2 extremidades de arestas ja'
+	 * existentes, escolhidas uniformemente, o que equivale a escolher vertices
+	 * com probabilidade proporcional ao grau.
+	 */
+	private static void preferentialAttachment(Random r, int[] src,
+			int[] dst, int n) {
+		int k = AVG_DEGREE / 2;
+		int e = 0;
+		// Nucleo inicial em anel
+		for (int u = 0; u <= k && e < src.length; u++) {
+			src[e] = u;
+			dst[e++] = (u + 1) % (k + 1);
+		}
+		for (int u = k + 1; u < n && e < src.length; u++) {
+			for (int j = 0; j < k && e < src.length; j++) {
+				int i = r.nextInt(e);
+				src[e] = u;
+				dst[e++] = r.nextBoolean() ? src[i] : dst[i];
+			}
+		}
+		// Completa com arestas uniformes caso n seja pequeno
+		randomEdges(r, src, dst, e, src.length, 0, n);
+	}
+
+	private static CsrGraph toCsr(int n, int[] src, int[] dst) {
+		int[] offsets = new int[n + 1];
+		for (int i = 0; i < src.length; i++) {
+			offsets[src[i] + 1]++;
+			offsets[dst[i] + 1]++;
+		}
+		for (int u = 0; u < n; u++)
+			offsets[u + 1] += offsets[u];
+		int[] pos = new int[n];
+		System.arraycopy(offsets, 0, pos, 0, n);
+		int[] targets = new int[offsets[n]];
+		for (int i = 0; i < src.length; i++) {
+			targets[pos[src[i]]++] = dst[i];
+			targets[pos[dst[i]]++] = src[i];
+		}
+		return new CsrGraph(offsets, targets);
+	}
+
+	/**
+	 * Converte o grafo para a representacao com HashMap de {@link Graph}.
+	 */
+	public static Graph toGraph(CsrGraph graph) {
+		HashMap<Integer, HashSet<Integer>> adjList = new HashMap<Integer, HashSet<Integer>>(
+				graph.getVertexCount() * 2);
+		for (int u = 0; u < graph.getVertexCount(); u++) {
+			HashSet<Integer> adjU = new HashSet<Integer>(graph.degree(u) * 2);
+			for (int i = graph.begin(u); i < graph.end(u); i++)
+				adjU.add(graph.target(i));
+			adjList.put(u, adjU);
+		}
+		return new Graph(adjList);
+	}
+
+	/**
+	 * Grava o grafo no formato de lista de adjacencias lido por
+	 * {@link br.ufmg.dcc.paa.tp2.util.GraphReader}.
+	 */
+	public static void writeAdjList(CsrGraph graph, File file)
+			throws IOException {
+		BufferedWriter writer = new BufferedWriter(new FileWriter(file),
+				1 << 16);
+		try {
+			for (int u = 0; u < graph.getVertexCount(); u++) {
+				writer.write(Integer.toString(u));
+				for (int i = graph.begin(u); i < graph.end(u); i++) {
+					writer.write(' ');
+					writer.write(Integer.toString(graph.target(i)));
+				}
+				writer.write('\n');
+			}
+		} finally {
+			writer.close();
+		}
+	}
+}
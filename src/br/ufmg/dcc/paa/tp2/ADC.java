@@ -1,13 +1,24 @@
 package br.ufmg.dcc.paa.tp2;
 
+import java.io.File;
+import java.io.PrintStream;
+import java.io.PrintWriter;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.BitSet;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Random;
-import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import br.ufmg.dcc.paa.tp2.util.IndexedHeap;
+import br.ufmg.dcc.paa.tp2.util.IntList;
 import br.ufmg.dcc.paa.tp2.util.Metrics;
+import br.ufmg.dcc.paa.tp2.util.Profile;
 import br.ufmg.dcc.paa.tp2.util.Tuple2;
 
 /**
@@ -16,285 +27,807 @@ import br.ufmg.dcc.paa.tp2.util.Tuple2;
  * @author Wilson de Carvalho
  */
 public class ADC {
+	/**
+	 * Criterio usado para escolher a melhor particao entre varias tentativas.
+	 */
+	public enum Criterion {
+		// Condutancia normalizada
+		CN,
+		// Modularidade
+		MODULARITY
+	}
+
+	/**
+	 * Estrategia usada para expandir a regiao honesta a partir das sementes.
+	 */
+	public enum Engine {
+		// Insercao gulosa vertice a vertice, mantida se a CN aumentar
+		GREEDY,
+		// Ordenacao por confianca propagada das sementes (SybilRank) e corte
+		// no prefixo de menor condutancia
+		SYBIL_RANK,
+		// Insercao dos vertices de fronteira em ordem aproximada de maior ganho
+		// de CN, mantidos num heap de prioridades
+		GAIN_HEAP
+	}
+
 	// Quantidade de elementos que deverao ser gerados para a semente.
 	private final int seedSize = 20;
+	// Distancia maxima (em arestas) das sementes para que um vertice seja
+	// candidato a' regiao honesta; negativo para considerar todos
+	private int maxHops = -1;
+	// Estrategia de expansao da regiao honesta
+	private Engine engine = Engine.GREEDY;
+	// Saida das mensagens de progresso
+	private PrintStream out = System.out;
+	// Executor da gravacao dos arquivos de saida; nulo para gravar na thread
+	// atual
+	private Executor writer = null;
+	// Diretorio dos arquivos de saida; nulo para o diretorio atual
+	private String outputDir = null;
+	// Cache dos resultados em disco; nulo para sempre processar
+	private ResultCache resultCache = null;
+	// Registro de tempos e contadores das fases; nulo se desativado
+	private Profile profile = null;
+	// Threads das etapas paralelas: tentativas, BFS das sementes, SybilRank e
+	// contagem de triangulos
+	private int threads = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Define a estrategia de expansao da regiao honesta. Os arquivos de saida
+	 * e as metricas sao os mesmos para todas as estrategias.
+	 * 
+	 * @param engine
+	 *            Estrategia.
+	 */
+	public void setEngine(Engine engine) {
+		this.engine = engine;
+	}
+
+	/**
+	 * Define a saida das mensagens de progresso, por padrao System.out. Util
+	 * quando varios grafos sao processados ao mesmo tempo e as mensagens de
+	 * cada um devem ser identificadas ou descartadas.
+	 * 
+	 * @param out
+	 *            Saida das mensagens.
+	 */
+	public void setOutput(PrintStream out) {
+		this.out = out;
+	}
+
+	/**
+	 * Entrega a gravacao dos arquivos de saida a um executor, de modo que
+	 * {@link #execute} retorne assim que as metricas forem calculadas. A
+	 * particao e as metricas nao sao mais modificadas apos a entrega.
+	 * 
+	 * @param writer
+	 *            Executor das gravacoes, ou nulo para gravar na thread atual.
+	 */
+	public void setWriter(Executor writer) {
+		this.writer = writer;
+	}
+
+	/**
+	 * Define o numero de threads usadas pelo ADC, por padrao uma por
+	 * processador. Quando varios ADCs executam ao mesmo tempo (varios grafos
+	 * ou tarefas), cada um deve receber apenas a sua parte dos processadores,
+	 * para que o total de threads nao se multiplique. Dentro de cada
+	 * tentativa de {@link #execute(CsrGraph, int[], String, int, long, Criterion)}
+	 * as etapas sao sequenciais, ja' que as tentativas ocupam as threads.
+	 * 
+	 * @param threads
+	 *            Numero de threads, pelo menos 1.
+	 */
+	public void setThreads(int threads) {
+		this.threads = Math.max(threads, 1);
+	}
+
+	/**
+	 * Define o diretorio em que os arquivos de saida sao gravados.
+	 * 
+	 * @param outputDir
+	 *            Diretorio, ou nulo para o diretorio atual.
+	 */
+	public void setOutputDir(String outputDir) {
+		this.outputDir = outputDir;
+	}
+
+	/**
+	 * Reaproveita resultados de execucoes anteriores com o mesmo grafo,
+	 * sementes, vertices sybil e opcoes. Num acerto, a particao e as metricas
+	 * sao lidas do cache e apenas os arquivos de saida sao gravados (o arquivo
+	 * de tentativas nao e' gerado).
+	 * 
+	 * @param resultCache
+	 *            Cache, ou nulo para desativar.
+	 */
+	public void setResultCache(ResultCache resultCache) {
+		this.resultCache = resultCache;
+	}
+
+	/**
+	 * Registra o tempo, os bytes alocados e os contadores de cada fase
+	 * (createPartition, a estrategia de expansao, processTrials,
+	 * calculateMetrics e save). Os valores sao gravados em
+	 * 'profileG<nome>.txt', junto com os demais arquivos de saida.
+	 * 
+	 * Os bytes de processTrials sao a soma das tentativas, medidas cada uma
+	 * na sua thread. Fases que usam um pool auxiliar (calculateMetrics e a
+	 * expansao com BFS ou SybilRank, com mais de uma thread) nao registram
+	 * bytes, ja' que a thread atual veria apenas parte das alocacoes.
+	 * 
+	 * @param profile
+	 *            Registro, ou nulo para desativar.
+	 */
+	public void setProfile(Profile profile) {
+		this.profile = profile;
+	}
+
+	/**
+	 * Restringe os candidatos a' regiao honesta aos vertices a no maximo
+	 * maxHops arestas das sementes, calculadas por uma {@link ParallelBfs}
+	 * antes do processamento das regioes.
+	 * 
+	 * @param maxHops
+	 *            Distancia maxima, ou um valor negativo para desativar o
+	 *            filtro.
+	 */
+	public void setMaxHops(int maxHops) {
+		this.maxHops = maxHops;
+	}
 
 	/**
 	 * Executa o algoritmo de deteccao de comunidades (ADC).
 	 * 
-	 * @param adjListGraph
+	 * @param graph
+	 *            Grafo original.
+	 * @param sybil
+	 *            Vertices sybil conhecidos para comparacao.
+	 */
+	public void execute(CsrGraph graph, int[] sybil, String graphName) {
+		this.execute(graph, sybil, graphName, 1, new Random().nextLong(),
+				Criterion.CN);
+	}
+
+	/**
+	 * Executa o algoritmo de deteccao de comunidades (ADC) em varias
+	 * tentativas independentes, em paralelo, e mantem a melhor particao
+	 * segundo o criterio informado. A tentativa i usa a semente aleatoria
+	 * (seed + i), de modo que o resultado pode ser reproduzido. Todas as
+	 * tentativas compartilham o mesmo grafo, que e' somente leitura.
+	 * 
+	 * @param graph
+	 *            Grafo original.
 	 * @param sybil
 	 *            Vertices sybil conhecidos para comparacao.
+	 * @param trials
+	 *            Numero de tentativas.
+	 * @param seed
+	 *            Semente aleatoria da primeira tentativa.
+	 * @param criterion
+	 *            Criterio de escolha da melhor particao.
 	 */
-	public void execute(ArrayList<ArrayList<Integer>> adjListGraph,
-			int[] sybil, String graphName) {
-		// Monta os grafos A e B, onde B = V - A
-		System.out.println("\tIniciando criacao dos grafos A e B...");
-		long start = System.currentTimeMillis();
-		Tuple2<Graph, Graph> tuple = this.createGraphsAB(adjListGraph);
-		this.endProcessing(start);
-		Graph graphA = tuple._1;
-		Graph graphB = tuple._2;
-		// Separa as regioes do grafo
-		System.out.println("\tProcessando regioes honesta e Sybil...");
-		start = System.currentTimeMillis();
-		this.processRegions(graphA, graphB, adjListGraph);
-		this.endProcessing(start);
-		System.out.println("\tCalculando metricas...");
+	public void execute(CsrGraph graph, int[] sybil, String graphName,
+			int trials, long seed, Criterion criterion) {
+		Partition partition;
+		long start;
+		String key = null;
+		if (resultCache != null) {
+			Profile.Timer timer = this.startPhase("resultCache");
+			key = this.cacheKey(graph, sybil, trials, seed, criterion);
+			Tuple2<BitSet, Metrics> cached = resultCache.get(key,
+					graph.getVertexCount());
+			stopPhase(timer);
+			if (cached != null) {
+				out.println("\tResultado recuperado do cache.");
+				partition = new Partition(graph);
+				BitSet inA = cached._1;
+				for (int u = inA.nextSetBit(0); u >= 0; u = inA
+						.nextSetBit(u + 1))
+					partition.moveToA(u);
+				this.save(partition, cached._2, graphName);
+				return;
+			}
+		}
+		if (trials <= 1) {
+			// Monta a particao inicial (A, B), onde B = V - A
+			out.println("\tIniciando criacao dos grafos A e B...");
+			start = System.currentTimeMillis();
+			Profile.Timer timer = this.startPhase("createPartition");
+			partition = this.createPartition(graph, new Random(seed));
+			stopPhase(timer);
+			this.endProcessing(start);
+			// Separa as regioes do grafo
+			out.println("\tProcessando regioes honesta e Sybil...");
+			start = System.currentTimeMillis();
+			// A BFS das sementes e o SybilRank usam um pool proprio
+			timer = this.startPhase(this.expandPhase(), threads == 1
+					|| (maxHops < 0 && engine != Engine.SYBIL_RANK));
+			this.expand(partition);
+			stopPhase(timer);
+			this.endProcessing(start);
+		} else {
+			out.println("\tProcessando regioes honesta e Sybil em "
+					+ trials + " tentativas...");
+			start = System.currentTimeMillis();
+			// Bytes somados pelas proprias tentativas, nas threads do pool
+			Profile.Timer timer = this.startPhase("processTrials", false);
+			partition = this.processTrials(graph, trials, seed, criterion,
+					this.outputFile("trialsG" + graphName + ".txt"));
+			stopPhase(timer);
+			this.endProcessing(start);
+			if (partition == null)
+				return;
+		}
+		out.println("\tCalculando metricas...");
 		start = System.currentTimeMillis();
-		Metrics met = this
-				.calculateMetrics(adjListGraph, graphA, graphB, sybil);
+		// Com mais de uma thread, os triangulos sao contados num pool proprio
+		Profile.Timer timer = this.startPhase("calculateMetrics",
+				threads == 1);
+		Metrics met = this.calculateMetrics(partition, sybil);
+		stopPhase(timer);
 		this.endProcessing(start);
-		met.saveToFile("metricsG" + graphName + ".txt");
-		graphA.saveToFile("regionHonestG" + graphName + ".txt");
-		graphB.saveToFile("regionSybilG" + graphName + ".txt");
+		if (resultCache != null)
+			resultCache.put(key, partition, met);
+		this.save(partition, met, graphName);
+	}
+
+	/**
+	 * Monta a chave do resultado no cache a partir do conteudo do grafo, dos
+	 * conjuntos de sementes de cada tentativa, dos vertices sybil e das
+	 * opcoes que alteram o resultado.
+	 * 
+	 * Custo: Theta(V+E)
+	 */
+	private String cacheKey(CsrGraph graph, int[] sybil, int trials,
+			long seed, Criterion criterion) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("grafo=").append(ResultCache.fingerprint(graph));
+		sb.append(" sybil=").append(ResultCache.fingerprint(sybil));
+		sb.append(" sementes=");
+		for (int i = 0; i < Math.max(trials, 1); i++) {
+			if (i > 0)
+				sb.append(',');
+			HashSet<Integer> set = this.getSeeds(new Random(seed + i));
+			IntList seeds = new IntList(set.size());
+			Iterator<Integer> itr = set.iterator();
+			while (itr.hasNext()) {
+				int u = itr.next();
+				if (u < graph.getVertexCount())
+					seeds.add(u);
+			}
+			sb.append(ResultCache.fingerprint(seeds.toArray()));
+		}
+		sb.append(" motor=").append(engine);
+		sb.append(" saltos=").append(maxHops);
+		if (trials > 1)
+			sb.append(" criterio=").append(criterion);
+		return sb.toString();
+	}
+
+	/**
+	 * Grava as metricas e as regioes honesta e Sybil, no executor de gravacao
+	 * se houver.
+	 */
+	private void save(final Partition partition, final Metrics met,
+			final String graphName) {
+		Runnable save = new Runnable() {
+			@Override
+			public void run() {
+				Profile.Timer timer = startPhase("save");
+				met.saveToFile(outputFile("metricsG" + graphName + ".txt"));
+				partition.saveToFile(
+						outputFile("regionHonestG" + graphName + ".txt"), true);
+				partition.saveToFile(
+						outputFile("regionSybilG" + graphName + ".txt"), false);
+				stopPhase(timer);
+				if (profile != null)
+					profile.saveToFile(outputFile("profileG" + graphName
+							+ ".txt"));
+			}
+		};
+		if (writer == null)
+			save.run();
+		else
+			writer.execute(save);
+	}
+
+	private Profile.Timer startPhase(String phase) {
+		return this.startPhase(phase, true);
+	}
+
+	/**
+	 * @param sameThread
+	 *            Verdadeiro se a fase executa apenas na thread atual; caso
+	 *            contrario, os bytes alocados nao sao medidos pela fase.
+	 */
+	private Profile.Timer startPhase(String phase, boolean sameThread) {
+		if (profile == null)
+			return null;
+		return sameThread ? profile.start(phase) : profile
+				.startTimeOnly(phase);
+	}
+
+	private static void stopPhase(Profile.Timer timer) {
+		if (timer != null)
+			timer.stop();
+	}
+
+	/**
+	 * Registra os contadores de uma execucao da estrategia de expansao:
+	 * vertices testados, insercoes mantidas e desfeitas e arestas percorridas
+	 * pelos movimentos.
+	 */
+	private void count(String phase, long tried, long accepted,
+			long rolledBack, long edgesScanned) {
+		if (profile == null)
+			return;
+		profile.add(phase + ".tried", tried);
+		profile.add(phase + ".accepted", accepted);
+		profile.add(phase + ".rolledBack", rolledBack);
+		profile.add(phase + ".edgesScanned", edgesScanned);
+	}
+
+	/**
+	 * @return Nome da fase da estrategia de expansao configurada.
+	 */
+	private String expandPhase() {
+		switch (engine) {
+		case SYBIL_RANK:
+			return "processRanking";
+		case GAIN_HEAP:
+			return "processFrontier";
+		default:
+			return "processRegions";
+		}
+	}
+
+	private String outputFile(String name) {
+		return (outputDir == null) ? name : new File(outputDir, name)
+				.getPath();
 	}
 
 	private void endProcessing(long startMillis) {
-		System.out.println("\t\tFinalizado.");
+		out.println("\t\tFinalizado.");
 		long current = System.currentTimeMillis();
 		double total = current - startMillis;
 		if (total > 1000) {
 			double totalSec = (total / 1000);
-			System.out.println("\t\t\tTempo total de execucao: " + totalSec
+			out.println("\t\t\tTempo total de execucao: " + totalSec
 					+ " s.");
 		} else {
-			System.out.println("\t\t\tTempo total de execucao: " + total
+			out.println("\t\t\tTempo total de execucao: " + total
 					+ " ms.");
 		}
 	}
 
 	/**
-	 * Calcula as metricas do grafo.
+	 * Calcula as metricas do grafo numa unica passada.
 	 * 
-	 * @param graph
+	 * Os numeros de arestas eAA, eBB e eAB sao lidos uma vez dos contadores da
+	 * particao e compartilhados entre condutancias e modularidade; as duas
+	 * taxas de acerto saem de uma unica varredura da regiao Sybil conhecida e
+	 * os dois coeficientes de agrupamento de uma unica contagem de
+	 * triangulos.
+	 * 
+	 * Custo: O(|sybil|) mais O(E^{3/2}) para o agrupamento
+	 * 
+	 * @param partition
+	 *            Particao com a regiao honesta em A e a regiao Sybil em B.
 	 */
-	private Metrics calculateMetrics(
-			ArrayList<ArrayList<Integer>> adjListGraph, Graph graphHonest,
-			Graph graphSybil, int[] origSybil) {
+	Metrics calculateMetrics(Partition partition, int[] origSybil) {
+		CsrGraph graph = partition.getGraph();
+		long eAA = partition.getEAA();
+		long eBB = partition.getEBB();
+		long eAB = partition.getEAB();
+		// Vertices Sybil conhecidos que ficaram na regiao honesta
+		int sybilInA = 0;
+		for (int i = 0; i < origSybil.length; i++) {
+			if (partition.inA(origSybil[i]))
+				sybilInA++;
+		}
+		Tuple2<Float, Float> clust = partition.clustCoeficients(threads);
+
 		Metrics met = new Metrics();
-		met.setAvgDegre(new Graph(adjListGraph).avgDegree());
-		met.setCondutHonest(this.conductance(graphHonest, graphSybil,
-				adjListGraph));
-		met.setCondutSybil(this.conductance(graphSybil, graphHonest,
-				adjListGraph));
-		met.setCorrectnessSybil(this.sybilCorrectness(graphSybil, origSybil));
-		met.setCorrectnessHonest(this.honestCorrectness(graphHonest, origSybil,
-				adjListGraph.size()));
-		met.setClustCoefHonest(graphHonest.clustCoeficient());
-		met.setClustCoefSybil(graphSybil.clustCoeficient());
+		met.setAvgDegre(graph.avgDegree());
+		met.setCondutHonest(PartitionQuality.conductance(eAA, eAB));
+		met.setCondutSybil(PartitionQuality.conductance(eBB, eAB));
+		met.setCorrectnessSybil((float) (origSybil.length - sybilInA)
+				/ (float) origSybil.length);
+		met.setCorrectnessHonest((float) (partition.getSizeA() - sybilInA)
+				/ (float) (graph.getVertexCount() - origSybil.length));
+		met.setClustCoefHonest(clust._1);
+		met.setClustCoefSybil(clust._2);
 		met.setFalsePositive(1 - met.getCorrectnessHonest());
 		met.setFalseNegative(1 - met.getCorrectnessSybil());
-		met.setModularity(this
-				.modularity(graphHonest, graphSybil, adjListGraph));
+		met.setModularity((float) PartitionQuality.modularity(eAA, eBB, eAB,
+				graph.getEdgeCount()));
 		return met;
 	}
 
 	/**
-	 * Calcula o percentual de acertos da regiao sybil.
+	 * Executa o processamento necessario para calcular a condutancia
+	 * normalizada (CN).
 	 * 
-	 * Custo = O(n), onde n e' o tamanho da regiao sybil.
+	 * O metodo faz a separacao entre as regioes honesta e sybil na propria
+	 * particao fornecida, sendo que a regiao A ficara com a regiao honesta e a
+	 * regiao B com a regiao sybil.
 	 * 
-	 * @param graphSybil
-	 *            Grafo da regiao Sybil encontrada.
-	 * @param sybil
-	 *            Regiao sybil conhecida.
-	 * @return Valor entre 0 e 1 (em P.U.) de acertos.
-	 */
-	private float sybilCorrectness(Graph graphSybil, int[] sybil) {
-		int correctCount = 0;
-		for (int i = 0; i < sybil.length; i++) {
-			if (graphSybil.contains(sybil[i]))
-				correctCount++;
+	 * Os contadores eAA, eBB e eAB sao mantidos pela particao: mover (ou
+	 * desfazer o movimento de) um vertice u custa O(Adj(u)), sem alocacao.
+	 * 
+	 * Se houver limite de distancia (ver {@link #setMaxHops(int)}), os
+	 * vertices mais distantes das sementes permanecem em B sem serem testados.
+	 * 
+	 * Custo: O(V+E)
+	 * 
+	 * @param partition
+	 *            Particao inicial, com as sementes em A.
+	 * @param threads
+	 *            Threads da BFS das sementes.
+	 * @return Condutancia normalizada
+	 */
+	double processRegions(Partition partition, int threads) {
+		double CN = this.calculateCN(partition);
+		int n = partition.getGraph().getVertexCount();
+		int[] hops = (maxHops >= 0) ? this.hopsFromSeeds(partition, threads)
+				: null;
+		long tried = 0, rolledBack = 0, edges = 0;
+		// Para cada vertice em B, faz sua insercao em A e verifica se a
+		// condutancia normalizada aumentou. Em caso positivo, prossegue
+		for (int u = 0; u < n; u++) { // Theta(V)
+			if (partition.inA(u) || (hops != null && hops[u] < 0))
+				continue;
+			partition.moveToA(u); // Theta(Adj(u))
+			tried++;
+			edges += partition.getGraph().degree(u);
+			double newCN = this.calculateCN(partition);
+			if (newCN > CN) {
+				CN = newCN;
+			} else {
+				partition.moveToB(u); // Theta(Adj(u))
+				rolledBack++;
+				edges += partition.getGraph().degree(u);
+			}
 		}
-		return (float) correctCount / (float) sybil.length;
+		this.count("processRegions", tried, tried - rolledBack, rolledBack,
+				edges);
+		return CN;
 	}
 
 	/**
-	 * Calcula o percentual de acertos na regiao honesta.
+	 * Expande a regiao honesta com a estrategia configurada.
 	 * 
-	 * @param graphHonest
-	 *            Grafo da regiao honesta encontrada.
-	 * @param sybil
-	 *            Regiao sybil conhecida.
-	 * @param origGraphVertexCount
-	 *            Numero de vertices do grafo original.
-	 * 
-	 * @return Valor entre 0 e 1 (em P.U.) de acertos.
-	 */
-	private float honestCorrectness(Graph graphHonest, int[] sybil,
-			int origGraphVertexCount) {
-		float correctCount = graphHonest.getVertexCount();
-		for (int i = 0; i < sybil.length; i++) {
-			if (graphHonest.contains(sybil[i]))
-				correctCount--;
+	 * @param partition
+	 *            Particao inicial, com as sementes em A.
+	 * @return Condutancia normalizada da particao final.
+	 */
+	double expand(Partition partition) {
+		return this.expand(partition, threads);
+	}
+
+	private double expand(Partition partition, int threads) {
+		switch (engine) {
+		case SYBIL_RANK:
+			return this.processRanking(partition, threads);
+		case GAIN_HEAP:
+			return this.processFrontier(partition, threads);
+		default:
+			return this.processRegions(partition, threads);
 		}
-		return correctCount / (float) (origGraphVertexCount - sybil.length);
 	}
 
 	/**
-	 * Executa o processamento necessario para calcular a condutancia
-	 * normalizada (CN).
+	 * Separa as regioes pela confianca propagada a partir das sementes
+	 * ({@link SybilRank}): os vertices sao inseridos em A em ordem decrescente
+	 * de confianca normalizada pelo grau e o corte e' feito no prefixo de menor
+	 * condutancia eAB / min(vol(A), vol(B)) (sweep cut). A CN nao serve como
+	 * limiar aqui, pois e' maxima quando todos os vertices estao em A. Os
+	 * vertices apos o corte voltam para B.
+	 * 
+	 * Custo: O((V+E) log V)
 	 * 
-	 * O metodo faz a separacao entre as regioes honesta e sybil nos proprios
-	 * grafos fornecidos, sendo que o grafo A ficara com a regiao honesta e o
-	 * grafo B com a regiao sybil.
+	 * @param partition
+	 *            Particao inicial, com as sementes em A.
+	 * @param threads
+	 *            Threads do SybilRank e da BFS das sementes.
+	 * @return Condutancia normalizada da particao final.
+	 */
+	double processRanking(Partition partition, int threads) {
+		int[] order = new SybilRank(partition.getGraph(), threads).rank(this
+				.seedsOf(partition));
+		int[] hops = (maxHops >= 0) ? this.hopsFromSeeds(partition, threads)
+				: null;
+		BitSet inserted = new BitSet(order.length);
+		double best = this.sweepConductance(partition);
+		int bestPrefix = 0;
+		long tried = 0, rolledBack = 0, edges = 0;
+		for (int i = 0; i < order.length; i++) { // Theta(V)
+			int u = order[i];
+			if (partition.inA(u) || (hops != null && hops[u] < 0))
+				continue;
+			partition.moveToA(u); // Theta(Adj(u))
+			inserted.set(u);
+			tried++;
+			edges += partition.getGraph().degree(u);
+			double phi = this.sweepConductance(partition);
+			if (phi < best) {
+				best = phi;
+				bestPrefix = i + 1;
+			}
+		}
+		// Desfaz as insercoes apos o melhor prefixo
+		for (int i = bestPrefix; i < order.length; i++) {
+			if (inserted.get(order[i])) {
+				partition.moveToB(order[i]); // Theta(Adj(u))
+				rolledBack++;
+				edges += partition.getGraph().degree(order[i]);
+			}
+		}
+		this.count("processRanking", tried, tried - rolledBack, rolledBack,
+				edges);
+		return this.calculateCN(partition);
+	}
+
+	/**
+	 * Expande a regiao honesta pelos vertices de fronteira (em B, com algum
+	 * vizinho em A) em ordem aproximada de maior CN apos a insercao, enquanto
+	 * a CN aumentar.
+	 * 
+	 * A CN apos inserir u depende apenas dos contadores globais e do numero de
+	 * vizinhos de u em A, e e' calculada em O(1). Os candidatos ficam num heap
+	 * indexado com a CN calculada na ultima avaliacao. Os vizinhos em B do
+	 * vertice inserido tem a chave recalculada na hora, ja' que o seu numero
+	 * de vizinhos em A mudou; as chaves dos demais vertices, porem, ficam
+	 * desatualizadas, pois cada insercao altera os contadores globais. O
+	 * vertice do topo e' reavaliado antes de ser inserido e volta ao heap se
+	 * a sua chave estava alta demais, mas um vertice cuja chave ficou abaixo
+	 * do valor atual so' e' corrigido quando um vizinho entra em A ou quando
+	 * chega ao topo. Por isso a ordem nao e' estritamente a de maior CN:
+	 * recalcular todas as chaves a cada insercao custaria Theta(V) por
+	 * insercao.
+	 * 
+	 * Ao contrario de {@link #processRegions(Partition, int)}, nenhuma
+	 * insercao e' desfeita e vertices recusados voltam a ser considerados
+	 * quando um vizinho entra em A.
 	 * 
-	 * Custo: O(V^2 + VE + E)
+	 * Custo: O(E log V) atualizacoes do heap, mais as reavaliacoes.
 	 * 
-	 * @param graphA
-	 *            Grafo A
-	 * @param graphB
-	 *            Grafo B
-	 * @param adjListGraph
-	 *            Lista de adjacencias com o grafo original
+	 * @param partition
+	 *            Particao inicial, com as sementes em A.
+	 * @param threads
+	 *            Threads da BFS das sementes.
 	 * @return Condutancia normalizada
 	 */
-	private double processRegions(Graph graphA, Graph graphB,
-			ArrayList<ArrayList<Integer>> adjListGraph) {
-		// Cria o grafo com as arestas entre A e B
-		Graph abEdges = this.getABEdges(adjListGraph, graphA, graphB);
-		double CN = this.calculateCN(graphA, graphB, abEdges);
-		Set<Integer> verticesInB = new HashSet<Integer>(graphB.getVertices());
-		Iterator<Integer> itr = verticesInB.iterator();
-		// Guarda as arestas removidas de B e que nao foram inseridas em A
-		HashMap<Integer, HashSet<Integer>> remainingEdges = new HashMap<Integer, HashSet<Integer>>();
-		// Para cada vertice em B, faz sua insercao em A e verifica se a
-		// condutancia normalizada aumentou. Em caso positivo, prossegue
-		while (itr.hasNext()) { // Theta(V)
-			Integer u = itr.next();
-			graphA.addVertex(u);
-			// Tenta adicionar as arestas remanescentes ao grafo
-			this.addRemainingEdges(u, remainingEdges, graphA);
-			Set<Edge> adjU = graphB.getAdjEdges(u);
-			if (adjU != null) {
-				Iterator<Edge> itrE = adjU.iterator();
-				while (itrE.hasNext()) { // Theta(E)
-					Edge e = itrE.next();
-					// Se existir o outro o vertice da aresta, insere em A
-					if (graphA.contains(e.v())) {
-						graphA.addEdge(e, true);
-					} else {
-						// Caso contrario, coloca na lista de remanescente
-						addRemainingEdge(e.u(), e.v(), remainingEdges);
-						addRemainingEdge(e.v(), e.u(), remainingEdges);
-					}
-				}
-				graphB.removeVertex(u);
+	double processFrontier(Partition partition, int threads) {
+		CsrGraph graph = partition.getGraph();
+		int n = graph.getVertexCount();
+		int[] hops = (maxHops >= 0) ? this.hopsFromSeeds(partition, threads)
+				: null;
+		IndexedHeap heap = new IndexedHeap(n);
+		for (int u = 0; u < n; u++) { // Theta(V)
+			if (!partition.inA(u) && partition.getNeighborsInA(u) > 0
+					&& (hops == null || hops[u] >= 0))
+				heap.put(u, this.cnIfMoved(partition, u));
+		}
+		double CN = this.calculateCN(partition);
+		long tried = 0, accepted = 0, edges = 0;
+		while (!heap.isEmpty()) {
+			int u = heap.poll();
+			double cn = this.cnIfMoved(partition, u);
+			tried++;
+			// Chave desatualizada: volta ao heap se ainda puder ser o melhor
+			if (!heap.isEmpty() && cn < heap.key(heap.peek())) {
+				if (cn > CN)
+					heap.put(u, cn);
+				continue;
 			}
-			double newCN = this.calculateCN(graphA, graphB, abEdges); // Theta(V+E)
-			if (newCN > CN) {
-				CN = newCN;
-			} else {
-				graphA.removeVertex(u);
-				graphB.addVertex(u);
-				if (adjU != null)
-					graphB.addEdges(adjU, true);
+			if (cn <= CN)
+				continue;
+			partition.moveToA(u); // Theta(Adj(u))
+			CN = cn;
+			accepted++;
+			// O movimento e a atualizacao dos vizinhos percorrem Adj(u)
+			edges += 2L * graph.degree(u);
+			for (int i = graph.begin(u); i < graph.end(u); i++) { // Theta(Adj(u))
+				int v = graph.target(i);
+				if (!partition.inA(v) && (hops == null || hops[v] >= 0))
+					heap.put(v, this.cnIfMoved(partition, v)); // O(log V)
 			}
-			abEdges = this.getABEdges(adjListGraph, graphA, graphB); // Theta(V+E)
 		}
+		this.count("processFrontier", tried, accepted, 0, edges);
 		return CN;
 	}
 
-	private void addRemainingEdge(Integer u, Integer v,
-			HashMap<Integer, HashSet<Integer>> remainingEdges) {
-		if (remainingEdges.containsKey(u))
-			remainingEdges.get(u).add(v);
-		else {
-			HashSet<Integer> set = new HashSet<Integer>();
-			set.add(v);
-			remainingEdges.put(u, set);
-		}
+	/**
+	 * Calcula a CN que a particao teria se u fosse movido para A, sem move-lo.
+	 * Custo: O(log Adj(u))
+	 */
+	private double cnIfMoved(Partition partition, int u) {
+		CsrGraph graph = partition.getGraph();
+		int loop = graph.hasEdge(u, u) ? 1 : 0;
+		int a = partition.getNeighborsInA(u);
+		int b = graph.degree(u) - loop - a;
+		return calculateCN(partition.getEAA() + a + loop, partition.getEBB()
+				- b - loop, partition.getEAB() + b - a);
 	}
 
-	private void addRemainingEdges(Integer u,
-			HashMap<Integer, HashSet<Integer>> remainingEdges, Graph graph) {
-		if (remainingEdges.containsKey(u)) {
-			Iterator<Integer> itr = remainingEdges.get(u).iterator();
-			while (itr.hasNext()) {
-				Integer v = itr.next();
-				if (graph.contains(v)) {
-					Edge e = new Edge(u, v);
-					graph.addEdge(e, true);
-					itr.remove();
-				}
-			}
+	/**
+	 * Condutancia do corte, eAB / min(vol(A), vol(B)), onde vol e' a soma dos
+	 * graus da regiao. Vale 1 quando uma das regioes nao tem arestas.
+	 * Custo: O(1)
+	 */
+	private double sweepConductance(Partition partition) {
+		double eAB = partition.getEAB();
+		double volA = 2.0 * partition.getEAA() + eAB;
+		double volB = 2.0 * partition.getEBB() + eAB;
+		double vol = Math.min(volA, volB);
+		return (vol == 0) ? 1 : eAB / vol;
+	}
+
+	/**
+	 * Calcula a distancia de cada vertice ao conjunto de sementes (os vertices
+	 * em A), ate' maxHops arestas.
+	 * 
+	 * @return Distancias, com -1 para os vertices alem do limite.
+	 */
+	private int[] hopsFromSeeds(Partition partition, int threads) {
+		return new ParallelBfs(partition.getGraph(), threads).distances(
+				this.seedsOf(partition), maxHops);
+	}
+
+	/**
+	 * @return Vertices em A, em ordem crescente.
+	 */
+	private int[] seedsOf(Partition partition) {
+		int[] seeds = new int[partition.getSizeA()];
+		int k = 0;
+		for (int u = 0; k < seeds.length; u++) {
+			if (partition.inA(u))
+				seeds[k++] = u;
 		}
+		return seeds;
 	}
 
 	/**
-	 * Cria um novo grafo com as sementes para iniciar o ADC.
-	 * 
-	 * O(V+E)
-	 * 
-	 * @param adjListGraph
-	 *            Lista de adjacencias do grafo original
-	 * @return Grafo apenas com as arestas originarias nos vertices semente.
-	 */
-	private Tuple2<Graph, Graph> createGraphsAB(
-			ArrayList<ArrayList<Integer>> input) {
-		HashMap<Integer, HashSet<Integer>> tmpA = new HashMap<Integer, HashSet<Integer>>(
-				input.size());
-		HashMap<Integer, HashSet<Integer>> tmpB = new HashMap<Integer, HashSet<Integer>>(
-				input.size());
-		HashSet<Integer> seeds = this.getSeeds();
-		// Somente adiciona a nova lista de arestas dos vertices semente
-		for (int i = 0; i < input.size(); i++) {
-			if (seeds.contains(i)) {
-				HashSet<Integer> adjUSet = new HashSet<Integer>();
-				tmpA.put(i, adjUSet);
-				ArrayList<Integer> adjU = input.get(i);
-				for (int j = 0; j < adjU.size(); j++) {
-					if (seeds.contains(adjU.get(j))) {
-						adjUSet.add(adjU.get(j));
-					}
+	 * Executa as tentativas do ADC em um pool de ate' {@link #setThreads(int)}
+	 * threads, cada tentativa em uma unica thread, e retorna a melhor
+	 * particao. O valor do criterio em cada tentativa e' salvo em um arquivo e
+	 * a sua dispersao e' impressa.
+	 * 
+	 * @return Melhor particao ou null se nenhuma tentativa terminar.
+	 */
+	private Partition processTrials(final CsrGraph graph, int trials,
+			long seed, Criterion criterion, String fileName) {
+		ExecutorService pool = Executors.newFixedThreadPool(Math.min(trials,
+				threads));
+		List<Future<Partition>> futures = new ArrayList<Future<Partition>>(
+				trials);
+		for (int i = 0; i < trials; i++) {
+			final long trialSeed = seed + i;
+			futures.add(pool.submit(new Callable<Partition>() {
+				@Override
+				public Partition call() {
+					long startBytes = (profile == null) ? -1 : Profile
+							.allocatedBytes();
+					Partition p = createPartition(graph, new Random(trialSeed));
+					expand(p, 1);
+					if (startBytes >= 0)
+						profile.add("processTrials.bytes",
+								Profile.allocatedBytes() - startBytes);
+					return p;
 				}
-			} else {
-				HashSet<Integer> adjUSet = new HashSet<Integer>();
-				tmpB.put(i, adjUSet);
-				ArrayList<Integer> adjU = input.get(i);
-				for (int j = 0; j < adjU.size(); j++) {
-					if (!seeds.contains(adjU.get(j))) {
-						adjUSet.add(adjU.get(j));
-					}
+			}));
+		}
+		pool.shutdown();
+		Partition best = null;
+		double bestScore = 0;
+		long bestSeed = seed;
+		double[] scores = new double[trials];
+		int done = 0;
+		PrintWriter writer = null;
+		try {
+			writer = new PrintWriter(fileName, "UTF-8");
+			for (int i = 0; i < trials; i++) {
+				Partition p;
+				try {
+					p = futures.get(i).get();
+				} catch (Exception ex) {
+					ex.printStackTrace();
+					continue;
+				}
+				// Libera a referencia para que tentativas piores sejam coletadas
+				futures.set(i, null);
+				double score = (criterion == Criterion.MODULARITY) ? this
+						.modularity(p) : this.calculateCN(p);
+				writer.println((seed + i) + " " + score);
+				scores[done++] = score;
+				if (best == null || score > bestScore) {
+					best = p;
+					bestScore = score;
+					bestSeed = seed + i;
 				}
 			}
+		} catch (Exception ex) {
+			ex.printStackTrace();
+		} finally {
+			if (writer != null)
+				writer.close();
+		}
+		if (best != null)
+			this.printSpread(scores, done, bestScore, bestSeed, criterion);
+		return best;
+	}
+
+	/**
+	 * Imprime o melhor valor do criterio e a sua dispersao entre as
+	 * tentativas.
+	 */
+	private void printSpread(double[] scores, int count, double bestScore,
+			long bestSeed, Criterion criterion) {
+		double min = scores[0], max = scores[0], sum = 0;
+		for (int i = 0; i < count; i++) {
+			min = Math.min(min, scores[i]);
+			max = Math.max(max, scores[i]);
+			sum += scores[i];
 		}
-		return new Tuple2<Graph, Graph>(new Graph(tmpA), new Graph(tmpB));
+		double mean = sum / count;
+		double var = 0;
+		for (int i = 0; i < count; i++)
+			var += (scores[i] - mean) * (scores[i] - mean);
+		double stdDev = Math.sqrt(var / count);
+		out.println("\t\t" + count + " tentativas, criterio "
+				+ criterion + ": melhor = " + String.format("%.4f", bestScore)
+				+ " (semente " + bestSeed + "), min = "
+				+ String.format("%.4f", min) + ", max = "
+				+ String.format("%.4f", max) + ", media = "
+				+ String.format("%.4f", mean) + ", desvio padrao = "
+				+ String.format("%.4f", stdDev));
 	}
 
 	/**
-	 * Cria um grafo com as arestas que nao foram incluidas no grafo A nem no
-	 * grafo B.
+	 * Cria a particao inicial com as sementes na regiao A para iniciar o ADC.
 	 * 
-	 * O(V+E)
+	 * O(V)
+	 * 
+	 * @param graph
+	 *            Grafo original
+	 * @param r
+	 *            Gerador aleatorio usado para sortear as sementes.
+	 * @return Particao com as sementes em A e os demais vertices em B.
+	 */
+	Partition createPartition(CsrGraph graph, Random r) {
+		Partition partition = new Partition(graph);
+		Iterator<Integer> itr = this.getSeeds(r).iterator();
+		while (itr.hasNext()) {
+			int u = itr.next();
+			if (u < graph.getVertexCount())
+				partition.moveToA(u);
+		}
+		return partition;
+	}
+
+	/**
+	 * Cria a particao inicial com sementes informadas na regiao A.
 	 * 
-	 * @param adjListGraph
-	 *            Lista de adjacencias do grafo original
-	 * @param graphA
-	 *            Grafo A
-	 * @param graphB
-	 *            Grafo B
+	 * O(V) mais Theta(Adj(u)) por semente
 	 * 
-	 * @return Grafo apenas com as arestas entre grafos A e B.
+	 * @param graph
+	 *            Grafo original
+	 * @param seeds
+	 *            Vertices confiaveis. Identificadores invalidos sao
+	 *            ignorados.
+	 * @return Particao com as sementes em A e os demais vertices em B.
 	 */
-	private Graph getABEdges(ArrayList<ArrayList<Integer>> input, Graph graphA,
-			Graph graphB) {
-		HashMap<Integer, HashSet<Integer>> tmp = new HashMap<Integer, HashSet<Integer>>();
-		for (int i = 0; i < input.size(); i++) {
-			Integer u = new Integer(i);
-			Iterator<Integer> itr = input.get(u).iterator();
-			while (itr.hasNext()) {
-				Integer v = itr.next();
-				if ((graphA.contains(u) && graphB.contains(v))
-						|| (graphA.contains(v) && graphB.contains(u))) {
-					if (!tmp.containsKey(u))
-						tmp.put(u, new HashSet<Integer>());
-					tmp.get(u).add(v);
-				}
-			}
+	Partition createPartition(CsrGraph graph, int[] seeds) {
+		Partition partition = new Partition(graph);
+		for (int i = 0; i < seeds.length; i++) {
+			int u = seeds[i];
+			if (u >= 0 && u < graph.getVertexCount())
+				partition.moveToA(u);
 		}
-		return new Graph(tmp);
+		return partition;
 	}
 
 	/**
@@ -302,12 +835,13 @@ public class ADC {
 	 * primeiros vertices do grafo para compor a semente que sera' utilizada no
 	 * ADC
 	 * 
+	 * @param r
+	 *            Gerador aleatorio.
 	 * @return Conjunto de vertices para compor a semente.
 	 */
-	private HashSet<Integer> getSeeds() {
+	private HashSet<Integer> getSeeds(Random r) {
 		HashSet<Integer> values = new HashSet<Integer>();
 		/* values.add(2); values.add(5); values.add(7); return values; */
-		Random r = new Random();
 		while (values.size() != seedSize) {
 			int seed = r.nextInt(101);
 			if (!values.contains(seed))
@@ -316,86 +850,43 @@ public class ADC {
 		return values;
 	}
 
-	/**
-	 * Calcula a condutancia do grafo A.
-	 * 
-	 * Custo: O(V+E)
-	 * 
-	 * @param graphA
-	 *            Grafo A
-	 * @param graphB
-	 *            Grafo B (onde B = V - A)
-	 * @param graphOrg
-	 *            Grafo original
-	 * @return Condutancia.
-	 */
-	private float conductance(Graph graphA, Graph graphB,
-			ArrayList<ArrayList<Integer>> graphOrg) {
-		Graph graphAB = this.getABEdges(graphOrg, graphA, graphB); // O(V+E)
-		float eAA = graphA.getEdgeCount(); // O(V+E)
-		float eAB = graphAB.getEdgeCount(); // O(V+E)
-		return eAB / eAA;
-	}
-
 	/**
 	 * Calcula a modularidade do grafo original a partir das particoes honesta e
 	 * Sybil.
 	 * 
-	 * Custo: O(V+E)
+	 * Custo: O(1)
 	 * 
-	 * @param graphHonest
-	 *            Regiao honesta
-	 * @param graphSybil
-	 *            Regiao Sybil
-	 * @param graphOrg
-	 *            Grafo original
+	 * @param partition
+	 *            Particao com a regiao honesta em A e a Sybil em B.
 	 * @return Modularidade.
 	 */
-	private float modularity(Graph graphHonest, Graph graphSybil,
-			ArrayList<ArrayList<Integer>> graphOrg) {
-		// Numero de arestas entre as regioes honesta e Sybil
-		float eHS = this.getABEdges(graphOrg, graphHonest, graphSybil)
-				.getEdgeCount();
-		// Numero de arestas na regiao honesta
-		float eH = (float) graphHonest.getEdgeCount();
-		// Numero de arestas na regiao Sybil
-		float eS = (float) graphSybil.getEdgeCount();
-
-		// Total de arestas do grafo original
-		float E = new Graph(graphOrg).getEdgeCount();
-
-		// % de arestas na regiao honesta
-		float eiiH = eH / E;
-		// % de arestas na regiao Sybil
-		float eiiS = eS / E;
-		// % de arestas com pelo menos um vertice na regiao honesta
-		float aiH = (eH + eHS) / E;
-		// % de arestas com pelo menos um vertice na regiao Sybil
-		float aiS = (eS + eHS) / E;
-
-		// Modularidade => Q = \sum_{i=1}^{k}(e_{ii}-a_{i}^2)
-		// Referencia:
-		// https://www.cs.umd.edu/class/fall2009/cmsc858l/lecs/Lec10-modularity.pdf
-		float Q = (eiiH - (aiH * aiH)) + (eiiS - (aiS * aiS));
-
-		return Q;
+	private float modularity(Partition partition) {
+		return (float) PartitionQuality.modularity(partition.getEAA(),
+				partition.getEBB(), partition.getEAB(), partition.getGraph()
+						.getEdgeCount());
 	}
 
 	/**
-	 * Calcula a condutancia normalizada (Cn) do grafo. Custo: Theta(V+E)
+	 * Calcula a condutancia normalizada (Cn) da particao a partir dos
+	 * contadores de arestas. Custo: O(1)
 	 * 
-	 * @param graphA
-	 * @param graphB
-	 * @param abEdges
+	 * @param partition
+	 *            Particao (A, B), onde B = V - A
 	 * @return Condutancia normalizada.
 	 */
-	private double calculateCN(Graph graphA, Graph graphB, Graph abEdges) {
-		double eAA = graphA.getEdgeCount();
-		double eBB = graphB.getEdgeCount();
-		double eAB = abEdges.getEdgeCount();
+	private double calculateCN(Partition partition) {
+		return calculateCN(partition.getEAA(), partition.getEBB(),
+				partition.getEAB());
+	}
+
+	/**
+	 * Calcula a condutancia normalizada a partir dos numeros de arestas.
+	 * Custo: O(1)
+	 */
+	private static double calculateCN(double eAA, double eBB, double eAB) {
 		double K = eAA / (eAA + eAB);
 		double eA = eAA + eAB;
 		double eB = eBB + eAB;
 		return K - ((eA * eB) / ((eA * eA) + (eA * eB)));
 	}
-}
\ No newline at end of file
+}
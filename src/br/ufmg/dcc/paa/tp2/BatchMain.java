@@ -0,0 +1,359 @@
+package br.ufmg.dcc.paa.tp2;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import br.ufmg.dcc.paa.tp2.util.GraphReader;
+import br.ufmg.dcc.paa.tp2.util.Profile;
+
+/**
+ * Classe com metodo main para execucao do ADC sobre varios grafos numa unica
+ * JVM, a partir de um arquivo de manifesto com uma tarefa por linha:
+ * 
+ * <pre>
+ * grafo sybil prefixo semente
+ * </pre>
+ * 
+ * O prefixo indica o diretorio e o nome dos arquivos de saida: o prefixo
+ * 'saida/g042' gera 'saida/metricsGg042.txt', 'saida/regionHonestGg042.txt' e
+ * 'saida/regionSybilGg042.txt'. Linhas vazias e iniciadas por '#' sao
+ * ignoradas.
+ * 
+ * As tarefas sao executadas num pool de tamanho fixo. Antes de ler o seu
+ * grafo, cada tarefa reserva num semaforo a memoria estimada a partir do
+ * tamanho do arquivo e do numero de tentativas, de modo que grafos grandes nao
+ * sejam carregados ao mesmo tempo; uma tarefa maior que o orcamento inteiro
+ * espera todas as outras e executa sozinha. A memoria so' e' devolvida depois
+ * que os arquivos de saida da tarefa forem gravados, ja' que ate' la' a
+ * particao continua em uso. O tempo de cada tarefa e' gravado num resumo ao
+ * final.
+ * 
+ * As opcoes -comunidades, -simultaneos e -semente de {@link Main} nao se
+ * aplicam ao lote (a semente vem do manifesto) e sao recusadas.
+ * 
+ * @author Wilson de Carvalho
+ */
+public class BatchMain {
+	private static final long MB = 1024 * 1024;
+	// Memoria estimada por byte do arquivo: vetores CSR e buffers da leitura
+	// de listas de adjacencias em texto; snapshots binarios sao mapeados
+	private static final int TEXT_FACTOR = 3;
+	private static final int SNAPSHOT_FACTOR = 1;
+	// Bytes do arquivo por vertice, no minimo, se nao houver vertices
+	// isolados: "u v\n" em texto e o offset de 4 bytes no snapshot
+	private static final int FILE_BYTES_PER_VERTEX = 4;
+	// Memoria de cada tentativa por vertice: vetor de vizinhos em A (int) e
+	// mapa de bits da particao, arredondados
+	private static final int PARTITION_BYTES_PER_VERTEX = 5;
+
+	// Numero de tarefas executadas ao mesmo tempo
+	private static int workers = Runtime.getRuntime().availableProcessors();
+	// Orcamento de memoria das tarefas, em MB
+	private static int memoryBudget = (int) (Runtime.getRuntime().maxMemory()
+			* 3 / 4 / MB);
+	// Arquivo com o resumo das tarefas
+	private static String summaryFile = "batchSummary.txt";
+
+	/**
+	 * Tarefa do manifesto e o seu resultado.
+	 */
+	private static class Job {
+		final String graphFile;
+		final String sybilFile;
+		final String outputDir;
+		final String graphName;
+		final long seed;
+		int memoryMB;
+		boolean ok = false;
+		int vertexCount;
+		long edgeCount;
+		long waitMillis;
+		long readMillis;
+		long processMillis;
+
+		Job(String graphFile, String sybilFile, String prefix, long seed) {
+			this.graphFile = graphFile;
+			this.sybilFile = sybilFile;
+			File file = new File(prefix);
+			this.outputDir = file.getParent();
+			this.graphName = file.getName();
+			this.seed = seed;
+		}
+
+		String getPrefix() {
+			return (outputDir == null) ? graphName : new File(outputDir,
+					graphName).getPath();
+		}
+	}
+
+	public static void main(String[] args) {
+		if (args.length < 1 || !parseOptions(args)) {
+			System.out.println("E' necessario o arquivo de manifesto, com uma "
+					+ "tarefa por linha no formato:");
+			System.out.println("\tgrafo sybil prefixo semente");
+			System.out.println("Opcoes (apos o manifesto):");
+			System.out
+					.println("\t-trabalhos=N - Executa ate' N tarefas ao mesmo tempo");
+			System.out
+					.println("\t-memoria=MB - Memoria estimada maxima das tarefas em execucao");
+			System.out
+					.println("\t-resumo=arquivo - Arquivo do resumo das tarefas (padrao: batchSummary.txt)");
+			System.out
+					.println("\tAlem de -tentativas, -criterio, -leitura, -saltos, -motor, -cache e -perfil, como em Main");
+			return;
+		}
+		List<Job> jobs = readManifest(args[0]);
+		if (jobs == null)
+			return;
+		long start = System.currentTimeMillis();
+		System.out.println(jobs.size() + " tarefas, " + workers
+				+ " simultaneas, orcamento de " + memoryBudget + " MB.");
+		Semaphore memory = new Semaphore(memoryBudget, true);
+		AtomicInteger done = new AtomicInteger(0);
+		ExecutorService pool = Executors.newFixedThreadPool(workers);
+		// Gravacoes em ordem numa unica thread, fora do caminho critico
+		ExecutorService writer = Executors.newSingleThreadExecutor();
+		try {
+			List<Future<Job>> futures = new ArrayList<Future<Job>>(jobs.size());
+			for (int i = 0; i < jobs.size(); i++)
+				futures.add(pool.submit(jobTask(jobs.get(i), memory, writer,
+						done, jobs.size())));
+			for (int i = 0; i < futures.size(); i++) {
+				try {
+					futures.get(i).get();
+				} catch (ExecutionException ex) {
+					ex.getCause().printStackTrace();
+				}
+			}
+		} catch (InterruptedException ex) {
+			ex.printStackTrace();
+		} finally {
+			pool.shutdown();
+			writer.shutdown();
+			try {
+				writer.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException ex) {
+				ex.printStackTrace();
+			}
+		}
+		saveSummary(jobs, summaryFile);
+		System.out.println("Resumo das tarefas em '" + summaryFile + "'.");
+		System.out.println("Tempo total de execucao: "
+				+ (System.currentTimeMillis() - start) + " ms.");
+	}
+
+	/**
+	 * Le as opcoes do lote e repassa as demais a {@link Main}.
+	 * 
+	 * @return Falso se alguma opcao for invalida.
+	 */
+	private static boolean parseOptions(String[] args) {
+		List<String> common = new ArrayList<String>();
+		for (int i = 1; i < args.length; i++) {
+			String arg = args[i];
+			try {
+				if (arg.startsWith("-trabalhos=")) {
+					workers = Integer.parseInt(arg.substring(11));
+				} else if (arg.startsWith("-memoria=")) {
+					memoryBudget = Integer.parseInt(arg.substring(9));
+				} else if (arg.startsWith("-resumo=")) {
+					summaryFile = arg.substring(8);
+				} else if (arg.equals("-comunidades")
+						|| arg.startsWith("-simultaneos=")
+						|| arg.startsWith("-semente=")) {
+					System.out.println("Opcao nao suportada no lote: " + arg);
+					return false;
+				} else {
+					common.add(arg);
+				}
+			} catch (NumberFormatException ex) {
+				System.out.println("Opcao invalida: " + arg);
+				return false;
+			}
+		}
+		if (workers < 1 || memoryBudget < 1) {
+			System.out.println("Opcao invalida: numero de tarefas e memoria "
+					+ "devem ser positivos.");
+			return false;
+		}
+		return Main.parseOptions(common.toArray(new String[common.size()]), 0);
+	}
+
+	/**
+	 * Le o manifesto. A memoria de cada tarefa e' estimada pelo tamanho do
+	 * arquivo do grafo e pelo numero de tentativas, limitada ao orcamento
+	 * total. Deve ser chamado depois da leitura das opcoes.
+	 * 
+	 * @return Tarefas, ou nulo se o manifesto for invalido.
+	 */
+	private static List<Job> readManifest(String fileName) {
+		List<Job> jobs = new ArrayList<Job>();
+		BufferedReader reader = null;
+		try {
+			try {
+				reader = new BufferedReader(new InputStreamReader(
+						new FileInputStream(fileName), "UTF-8"));
+				String line;
+				int lineNumber = 0;
+				while ((line = reader.readLine()) != null) {
+					lineNumber++;
+					line = line.trim();
+					if (line.isEmpty() || line.startsWith("#"))
+						continue;
+					String[] fields = line.split("\\s+");
+					if (fields.length != 4) {
+						System.out.println("Linha " + lineNumber
+								+ " do manifesto invalida: " + line);
+						return null;
+					}
+					Job job = new Job(fields[0], fields[1], fields[2],
+							Long.parseLong(fields[3]));
+					job.memoryMB = estimateMemory(job.graphFile);
+					jobs.add(job);
+				}
+			} catch (NumberFormatException ex) {
+				System.out.println("Semente invalida no manifesto: "
+						+ ex.getMessage());
+				return null;
+			} catch (Exception ex) {
+				ex.printStackTrace();
+				System.out.println("Erro ao fazer a leitura do manifesto.");
+				return null;
+			}
+		} finally {
+			try {
+				if (reader != null)
+					reader.close();
+			} catch (Exception ex) {
+				ex.printStackTrace();
+			}
+		}
+		return jobs;
+	}
+
+	/**
+	 * Estima a memoria do grafo e das particoes: cada tentativa mantem a sua
+	 * propria {@link Partition} ate' que a melhor seja escolhida, e o numero
+	 * de vertices e' limitado pelo tamanho do arquivo.
+	 * 
+	 * @return Memoria estimada, em MB, para ler e processar o grafo, entre 1
+	 *         e o orcamento total.
+	 */
+	private static int estimateMemory(String graphFile) {
+		int factor = GraphSnapshot.isSnapshot(graphFile) ? SNAPSHOT_FACTOR
+				: TEXT_FACTOR;
+		long size = new File(graphFile).length();
+		long partitions = (long) Math.max(Main.trials, 1) * size
+				/ FILE_BYTES_PER_VERTEX * PARTITION_BYTES_PER_VERTEX;
+		long mb = (size * factor + partitions + MB - 1) / MB;
+		return (int) Math.max(1, Math.min(mb, memoryBudget));
+	}
+
+	/**
+	 * Tarefa que reserva a memoria estimada, le o grafo e os vertices sybil e
+	 * executa o ADC. As mensagens de progresso do ADC sao descartadas; o
+	 * andamento do lote e' mostrado numa linha por tarefa.
+	 * 
+	 * A memoria e' devolvida por uma tarefa enfileirada no writer apos as
+	 * gravacoes do ADC; como o writer tem uma unica thread, ela so' executa
+	 * depois que a particao e as metricas deixam de ser usadas.
+	 */
+	private static Callable<Job> jobTask(final Job job,
+			final Semaphore memory, final Executor writer,
+			final AtomicInteger done, final int total) {
+		return new Callable<Job>() {
+			@Override
+			public Job call() throws Exception {
+				long start = System.currentTimeMillis();
+				memory.acquire(job.memoryMB);
+				try {
+					long admitted = System.currentTimeMillis();
+					job.waitMillis = admitted - start;
+					CsrGraph graph = Main.readGraph(job.graphFile,
+							job.graphName);
+					int[] sybil = Main.readSybil(job.sybilFile, job.graphName);
+					long read = System.currentTimeMillis();
+					job.readMillis = read - admitted;
+					if (graph != null && sybil != null) {
+						sybil = new GraphReader().validateSybil(sybil,
+								graph.getVertexCount(), System.out);
+						job.vertexCount = graph.getVertexCount();
+						job.edgeCount = graph.getEdgeCount();
+						if (job.outputDir != null)
+							new File(job.outputDir).mkdirs();
+						ADC adc = new ADC();
+						adc.setMaxHops(Main.maxHops);
+						adc.setEngine(Main.engine);
+						adc.setThreads(Main.threadsPerJob(workers));
+						adc.setOutput(new PrintStream(
+								new ByteArrayOutputStream()));
+						adc.setOutputDir(job.outputDir);
+						adc.setWriter(writer);
+						adc.setResultCache(Main.resultCache);
+						if (Main.profiling)
+							adc.setProfile(new Profile());
+						adc.execute(graph, sybil, job.graphName, Main.trials,
+								job.seed, Main.criterion);
+						job.processMillis = System.currentTimeMillis() - read;
+						job.ok = true;
+					}
+				} finally {
+					writer.execute(new Runnable() {
+						@Override
+						public void run() {
+							memory.release(job.memoryMB);
+						}
+					});
+				}
+				System.out.println("[" + done.incrementAndGet() + "/" + total
+						+ "] " + job.getPrefix() + ": "
+						+ (job.ok ? "concluida" : "erro") + " em "
+						+ (System.currentTimeMillis() - start) + " ms.");
+				return job;
+			}
+		};
+	}
+
+	/**
+	 * Salva o resumo, uma tarefa por linha no formato "prefixo estado
+	 * vertices arestas memoriaMB esperaMs leituraMs processamentoMs", na
+	 * ordem do manifesto.
+	 */
+	private static void saveSummary(List<Job> jobs, String fileName) {
+		PrintWriter writer = null;
+		try {
+			try {
+				writer = new PrintWriter(fileName, "UTF-8");
+				for (int i = 0; i < jobs.size(); i++) {
+					Job job = jobs.get(i);
+					writer.println(job.getPrefix() + " "
+							+ (job.ok ? "ok" : "erro") + " " + job.vertexCount
+							+ " " + job.edgeCount + " " + job.memoryMB + " "
+							+ job.waitMillis + " " + job.readMillis + " "
+							+ job.processMillis);
+				}
+			} catch (Exception ex) {
+				ex.printStackTrace();
+			}
+		} finally {
+			if (writer != null)
+				writer.close();
+		}
+	}
+}
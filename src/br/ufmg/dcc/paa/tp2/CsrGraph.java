@@ -0,0 +1,308 @@
+package br.ufmg.dcc.paa.tp2;
+
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Grafo nao direcionado e imutavel representado no formato CSR (compressed
+ * sparse row). Os vizinhos do vertice u ficam em targets[offsets[u]] ate'
+ * targets[offsets[u + 1] - 1], ordenados e sem repeticoes. Lacos aparecem uma
+ * unica vez na lista do proprio vertice.
+ * 
+ * Ocupa 4 bytes por vertice e 4 bytes por aresta direcionada, contra mais de
+ * 50 bytes por aresta da representacao com HashMap/HashSet de {@link Graph}.
+ * Os vetores sao acessados por {@link IntBuffer}, que pode envolver vetores
+ * na heap ou um arquivo mapeado em memoria (ver {@link GraphSnapshot}).
+ * 
+ * @author Wilson de Carvalho
+ */
+public class CsrGraph {
+	private final IntBuffer offsets;
+	private final IntBuffer targets;
+	private final long edgeCount;
+	private final int loopCount;
+
+	/**
+	 * Cria uma instancia do grafo a partir dos vetores CSR. As listas de
+	 * adjacencias sao ordenadas, as repeticoes removidas e, caso alguma aresta
+	 * apareca em apenas um dos sentidos, o grafo e' simetrizado.
+	 * 
+	 * Custo: O(E log E) no pior caso; Theta(V+E) para listas ja' ordenadas e
+	 * simetricas, alem das buscas binarias de verificacao.
+	 * 
+	 * @param offsets
+	 *            Vetor com V+1 posicoes com o inicio da lista de cada vertice.
+	 * @param targets
+	 *            Vetor com os vizinhos de todos os vertices. E' reaproveitado
+	 *            (e modificado) sempre que possivel.
+	 * @throws IllegalArgumentException
+	 *             Se algum vizinho nao for um vertice valido.
+	 */
+	public CsrGraph(int[] offsets, int[] targets) {
+		int n = offsets.length - 1;
+		for (int u = 0; u < n; u++) {
+			for (int i = offsets[u]; i < offsets[u + 1]; i++) {
+				if (targets[i] < 0 || targets[i] >= n)
+					throw new IllegalArgumentException("Vertice invalido "
+							+ targets[i] + " na lista de adjacencias de " + u
+							+ ".");
+			}
+		}
+		int[][] csr = normalize(offsets, targets);
+		if (!isSymmetric(csr[0], csr[1])) {
+			csr = symmetrize(csr[0], csr[1]);
+			csr = normalize(csr[0], csr[1]);
+		}
+		this.offsets = IntBuffer.wrap(csr[0]);
+		this.targets = IntBuffer.wrap(csr[1]);
+		int loops = 0;
+		for (int u = 0; u < n; u++) {
+			if (this.hasEdge(u, u))
+				loops++;
+		}
+		this.loopCount = loops;
+		this.edgeCount = ((long) this.targets.limit() + loops) / 2;
+	}
+
+	/**
+	 * Cria o grafo a partir de vetores CSR ja' normalizados, sem copia-los nem
+	 * valida-los. Vetores de origem externa devem ser conferidos antes, como
+	 * em {@link GraphSnapshot#read(String)}.
+	 * 
+	 * @param offsets
+	 *            Inicio da lista de cada vertice (V+1 posicoes).
+	 * @param targets
+	 *            Vizinhos ordenados, sem repeticoes e simetricos.
+	 * @param loopCount
+	 *            Numero de lacos.
+	 */
+	CsrGraph(IntBuffer offsets, IntBuffer targets, int loopCount) {
+		this.offsets = offsets;
+		this.targets = targets;
+		this.loopCount = loopCount;
+		this.edgeCount = ((long) targets.limit() + loopCount) / 2;
+	}
+
+	/**
+	 * Cria o grafo a partir da lista de adjacencias retornada pelo leitor.
+	 * 
+	 * Custo: Theta(V+E), alem da normalizacao.
+	 * 
+	 * @param input
+	 *            Lista de adjacencias.
+	 * @return Grafo CSR.
+	 */
+	public static CsrGraph fromAdjList(ArrayList<ArrayList<Integer>> input) {
+		int[] offsets = new int[input.size() + 1];
+		for (int u = 0; u < input.size(); u++)
+			offsets[u + 1] = offsets[u] + input.get(u).size();
+		int[] targets = new int[offsets[input.size()]];
+		for (int u = 0; u < input.size(); u++) {
+			ArrayList<Integer> adjU = input.get(u);
+			for (int j = 0; j < adjU.size(); j++)
+				targets[offsets[u] + j] = adjU.get(j);
+		}
+		return new CsrGraph(offsets, targets);
+	}
+
+	/**
+	 * Ordena cada lista de adjacencias e remove as repeticoes, compactando os
+	 * vetores.
+	 * 
+	 * @return Vetores {offsets, targets} normalizados.
+	 */
+	static int[][] normalize(int[] offsets, int[] targets) {
+		int n = offsets.length - 1;
+		int[] newOffsets = new int[n + 1];
+		int pos = 0;
+		for (int u = 0; u < n; u++) {
+			int start = offsets[u];
+			int end = offsets[u + 1];
+			Arrays.sort(targets, start, end);
+			newOffsets[u] = pos;
+			for (int i = start; i < end; i++) {
+				if (i == start || targets[i] != targets[i - 1])
+					targets[pos++] = targets[i];
+			}
+		}
+		newOffsets[n] = pos;
+		return new int[][] { newOffsets,
+				pos == targets.length ? targets : Arrays.copyOf(targets, pos) };
+	}
+
+	private static boolean isSymmetric(int[] offsets, int[] targets) {
+		int n = offsets.length - 1;
+		for (int u = 0; u < n; u++) {
+			for (int i = offsets[u]; i < offsets[u + 1]; i++) {
+				int v = targets[i];
+				if (v != u
+						&& Arrays.binarySearch(targets, offsets[v],
+								offsets[v + 1], u) < 0)
+					return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Acrescenta o sentido inverso de todas as arestas. As repeticoes geradas
+	 * sao removidas na normalizacao seguinte.
+	 */
+	private static int[][] symmetrize(int[] offsets, int[] targets) {
+		int n = offsets.length - 1;
+		int[] degree = new int[n];
+		for (int u = 0; u < n; u++) {
+			for (int i = offsets[u]; i < offsets[u + 1]; i++) {
+				degree[u]++;
+				if (targets[i] != u)
+					degree[targets[i]]++;
+			}
+		}
+		int[] newOffsets = new int[n + 1];
+		for (int u = 0; u < n; u++)
+			newOffsets[u + 1] = newOffsets[u] + degree[u];
+		int[] newTargets = new int[newOffsets[n]];
+		int[] pos = Arrays.copyOf(newOffsets, n);
+		for (int u = 0; u < n; u++) {
+			for (int i = offsets[u]; i < offsets[u + 1]; i++) {
+				int v = targets[i];
+				newTargets[pos[u]++] = v;
+				if (v != u)
+					newTargets[pos[v]++] = u;
+			}
+		}
+		return new int[][] { newOffsets, newTargets };
+	}
+
+	IntBuffer getOffsets() {
+		return offsets;
+	}
+
+	IntBuffer getTargets() {
+		return targets;
+	}
+
+	int getLoopCount() {
+		return loopCount;
+	}
+
+	public int getVertexCount() {
+		return offsets.limit() - 1;
+	}
+
+	/**
+	 * Numero de arestas nao direcionadas, incluindo lacos. Custo: O(1)
+	 * 
+	 * @return Numero de arestas.
+	 */
+	public long getEdgeCount() {
+		return edgeCount;
+	}
+
+	/**
+	 * Grau do vertice u, isto e', tamanho da sua lista de adjacencias (um laco
+	 * conta uma vez).
+	 */
+	public int degree(int u) {
+		return offsets.get(u + 1) - offsets.get(u);
+	}
+
+	/**
+	 * Posicao do primeiro vizinho de u, a ser lido com {@link #target(int)}.
+	 */
+	public int begin(int u) {
+		return offsets.get(u);
+	}
+
+	/**
+	 * Posicao seguinte ao ultimo vizinho de u.
+	 */
+	public int end(int u) {
+		return offsets.get(u + 1);
+	}
+
+	/**
+	 * Vizinho armazenado na posicao i.
+	 */
+	public int target(int i) {
+		return targets.get(i);
+	}
+
+	/**
+	 * Verifica se a aresta (u, v) existe. Custo: O(log Adj(u))
+	 */
+	public boolean hasEdge(int u, int v) {
+		// Busca binaria na lista ordenada de u
+		int low = offsets.get(u);
+		int high = offsets.get(u + 1) - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int t = targets.get(mid);
+			if (t < v)
+				low = mid + 1;
+			else if (t > v)
+				high = mid - 1;
+			else
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Calcula o grau medio dos vertices do grafo, contando lacos duas vezes.
+	 * 
+	 * Custo: O(1)
+	 * 
+	 * @return Grau medio do grafo.
+	 */
+	public float avgDegree() {
+		if (getVertexCount() == 0)
+			return 0;
+		return ((float) targets.limit() + loopCount) / getVertexCount();
+	}
+
+	/**
+	 * Calcula a media do coeficiente de agrupamento local de todos os
+	 * vertices, contando os triangulos em paralelo com
+	 * {@link TriangleCounter}. Lacos sao ignorados.
+	 * 
+	 * Custo: O(E^{3/2})
+	 * 
+	 * @return Coeficiente de agrupamento medio do grafo.
+	 */
+	public float clustCoeficient() {
+		return new TriangleCounter(this).clustCoeficient();
+	}
+
+	/**
+	 * Efetua a busca em largura no grafo (breadth-first search).
+	 * 
+	 * @param s
+	 *            No de inicio da busca.
+	 * @return Dados dos nos visitados.
+	 */
+	public Traversal bfs(int s) {
+		return Traversal.bfs(offsets, targets, s);
+	}
+
+	/**
+	 * Efetua a busca em profundidade no grafo (depth-first search).
+	 * 
+	 * @return Dados dos nos visitados.
+	 */
+	public Traversal dfs() {
+		return Traversal.dfs(offsets, targets, -1);
+	}
+
+	/**
+	 * Efetua a busca em profundidade no grafo (depth-first search).
+	 * 
+	 * @param s
+	 *            No de inicio da busca.
+	 * @return Dados dos nos visitados.
+	 */
+	public Traversal dfs(int s) {
+		return Traversal.dfs(offsets, targets, s);
+	}
+}
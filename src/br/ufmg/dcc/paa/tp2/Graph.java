@@ -3,10 +3,9 @@ package br.ufmg.dcc.paa.tp2;
 import java.io.FileNotFoundException;
 import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
+import java.nio.IntBuffer;
 import java.util.*;
 
-import br.ufmg.dcc.paa.tp2.util.Math;
-
 class Edge {
 	private Integer u;
 	private Integer v;
@@ -31,22 +30,6 @@ class Edge {
 	}
 }
 
-class NodeColor {
-	public static final int WHITE = 1;
-	public static final int GRAY = 2;
-	public static final int BLACK = 3;
-
-	public Integer id = -1;
-	public int color = WHITE;
-	public Integer f = 0;
-	public Integer d = 0;
-	public Integer p = -1; // predecessor
-
-	public NodeColor(Integer nodeId) {
-		id = nodeId;
-	}
-}
-
 /**
  * Classe com implementacao de grafo por lista de adjacencias e algumas
  * funcionalidades basicas de navegacao.
@@ -55,32 +38,46 @@ class NodeColor {
  */
 public class Graph {
 	private HashMap<Integer, HashSet<Integer>> adjList = new HashMap<Integer, HashSet<Integer>>();
+	// Numero de arestas nao direcionadas, incluindo lacos
+	private int edgeCount = 0;
 
 	/**
-	 * Cria uma instancia do grafo. Custo de criacao: O(1)
+	 * Cria uma instancia do grafo. Custo de criacao: Theta(V+E)
+	 * 
+	 * A lista informada passa a pertencer ao grafo e nao deve ser alterada
+	 * externamente, sob pena de invalidar o contador de arestas.
 	 * 
 	 * @param input
 	 *            Lista de adjacencias do grafo a ser criado.
 	 */
 	public Graph(HashMap<Integer, HashSet<Integer>> input) {
 		this.adjList = input;
+		this.edgeCount = this.countEdges();
 	}
 
 	/**
 	 * Cria uma instancia do grafo. Custo de criacao: Theta(V+E)
 	 * 
+	 * As tabelas sao criadas com a capacidade necessaria para o numero de
+	 * vertices e para o grau de cada vertice. Para grafos grandes, prefira
+	 * {@link GraphBuilder}.
+	 * 
 	 * @param input
 	 *            Lista de adjacencias do grafo a ser criado.
 	 */
 	public Graph(ArrayList<ArrayList<Integer>> input) {
-		this.adjList = new HashMap<Integer, HashSet<Integer>>();
+		this.adjList = new HashMap<Integer, HashSet<Integer>>(
+				(int) (input.size() / 0.75f) + 1);
 		for (int u = 0; u < input.size(); u++) {  // Theta(V)
-			HashSet<Integer> adjU = new HashSet<Integer>();
+			ArrayList<Integer> inputU = input.get(u);
+			HashSet<Integer> adjU = new HashSet<Integer>(
+					(int) (inputU.size() / 0.75f) + 1);
 			adjList.put(u, adjU);
-			for (int v = 0; v < input.get(u).size(); v++) {  // Theta(Adj(u))
-				adjU.add(v);
+			for (int v = 0; v < inputU.size(); v++) {  // Theta(Adj(u))
+				adjU.add(inputU.get(v));
 			}
 		}
+		this.edgeCount = this.countEdges();
 	}
 
 	public int getVertexCount() {
@@ -88,53 +85,55 @@ public class Graph {
 	}
 
 	/**
-	 * Conta o numero de arestas.
+	 * Retorna o numero de arestas nao direcionadas, incluindo lacos. Uma
+	 * aresta (u, v) e' contada uma unica vez, esteja ela armazenada em um ou
+	 * nos dois sentidos.
 	 * 
-	 * Custo: Theta(V+E)
+	 * O contador e' mantido por addEdge, removeEdge e removeVertex.
 	 * 
-	 * @return
+	 * Custo: O(1)
+	 * 
+	 * @return Numero de arestas.
 	 */
 	public int getEdgeCount() {
+		return edgeCount;
+	}
+
+	/**
+	 * Conta o numero de arestas percorrendo as listas de adjacencias, sem
+	 * alocar estruturas auxiliares.
+	 * 
+	 * Custo: Theta(V+E)
+	 * 
+	 * @return Numero de arestas.
+	 */
+	private int countEdges() {
 		if (adjList == null)
 			return 0;
-		int edgeCount = 0;
-		HashMap<Integer, HashSet<Integer>> counted = new HashMap<Integer, HashSet<Integer>>();
-		Iterator<Integer> itr = adjList.keySet().iterator();
+		int count = 0;
+		Iterator<Map.Entry<Integer, HashSet<Integer>>> itr = adjList
+				.entrySet().iterator();
 		while (itr.hasNext()) { // Theta(V)
-			Integer u = itr.next();
-			Iterator<Integer> adjU = adjList.get(u).iterator();
+			Map.Entry<Integer, HashSet<Integer>> entry = itr.next();
+			Integer u = entry.getKey();
+			Iterator<Integer> adjU = entry.getValue().iterator();
 			while (adjU.hasNext()) { // Theta(Adj(u))
 				Integer v = adjU.next();
-				boolean countedHere = false;
-				if (counted.containsKey(u)) {
-					if (!counted.get(u).contains(v)) {
-						counted.get(u).add(v);
-						edgeCount++;
-						countedHere = true;
-					}
-				} else {
-					HashSet<Integer> set = new HashSet<Integer>();
-					set.add(v);
-					counted.put(u, set);
-					edgeCount++;
-					countedHere = true;
-				}
-				if (counted.containsKey(v)) {
-					if (!counted.get(v).contains(u)) {
-						counted.get(v).add(u);
-						if (!countedHere)
-							edgeCount++;
-					}
-				} else {
-					HashSet<Integer> set = new HashSet<Integer>();
-					set.add(u);
-					counted.put(v, set);
-					if (!countedHere)
-						edgeCount++;
-				}
+				// Arestas armazenadas nos dois sentidos sao contadas apenas a
+				// partir do menor vertice
+				if (u.intValue() <= v.intValue() || !this.hasArc(v, u))
+					count++;
 			}
 		}
-		return edgeCount;
+		return count;
+	}
+
+	/**
+	 * Verifica se existe o arco u->v.
+	 */
+	private boolean hasArc(Integer u, Integer v) {
+		HashSet<Integer> adjU = adjList.get(u);
+		return adjU != null && adjU.contains(v);
 	}
 
 	public Set<Integer> getVertices() {
@@ -186,6 +185,9 @@ public class Graph {
 		if (adjList.get(u) == null)
 			adjList.put(u, new HashSet<Integer>());
 		if (!adjList.get(u).contains(v)) {
+			// A aresta so' e' nova se o arco v->u tambem nao existir
+			if (u.equals(v) || !this.hasArc(v, u))
+				edgeCount++;
 			adjList.get(u).add(v);
 		}
 		if (undirected) {
@@ -230,6 +232,9 @@ public class Graph {
 			return;
 		if (adjList.get(u) != null && adjList.get(u).contains(v)) {
 			adjList.get(u).remove(v);
+			// A aresta deixa de existir se o arco v->u tambem nao existir
+			if (u.equals(v) || !this.hasArc(v, u))
+				edgeCount--;
 			if (adjList.get(u).isEmpty())
 				adjList.remove(u);
 		}
@@ -257,7 +262,10 @@ public class Graph {
 			Iterator<Integer> itr = adjU.iterator();
 			while (itr.hasNext()) {
 				Integer v = itr.next();
-				adjList.get(v).remove(u);
+				// O laco u->u sai junto com a lista de u
+				if (!v.equals(u) && adjList.get(v) != null)
+					adjList.get(v).remove(u);
+				edgeCount--;
 			}
 			adjList.remove(u);
 		}
@@ -383,137 +391,133 @@ public class Graph {
 	 * possiveis interligando tais vertices adjacentes.
 	 * 
 	 * Neste metodo, sera' calculado a media do coeficiente de agrupamento local
-	 * de todos os vertices.
+	 * de todos os vertices. O grafo e' convertido para {@link CsrGraph} e os
+	 * triangulos sao contados em paralelo por {@link TriangleCounter}. Lacos
+	 * sao ignorados.
 	 * 
-	 * Custo: Theta(V+3E) (usar analise amortizada)
+	 * Custo: Theta(V+E) para a conversao mais O(E^{3/2}) para a contagem
 	 * 
 	 * @return Coeficiente de agrupamento medio do grafo.
 	 */
 	public float clustCoeficient() {
 		if (adjList == null || adjList.isEmpty())
 			return 0;
-		HashMap<Integer, Float> coefByVertex = new HashMap<Integer, Float>();
-		Iterator<Integer> itr = adjList.keySet().iterator();
-		while (itr.hasNext()) { // Theta(V)
-			Integer u = itr.next();
-			int n = adjList.get(u).size();
-			// Calcula numero de combinacoes possiveis entre os vertices
-			// adjacentes de U
-			int c = Math.simplifyFactorialDivision(n, n - 2) / 2;
-			int count = 0;
-			Iterator<Integer> adjU = adjList.get(u).iterator();
-			while (adjU.hasNext()) { // Theta(Adj(u))
-				Integer v = adjU.next();
-				Iterator<Integer> adjV = adjList.get(v).iterator();
-				while (adjV.hasNext()) { // Theta(Adj(v))
-					Integer t = adjV.next();
-					if (t != u && adjList.get(u).contains(t)) {
-						count++;
-					}
+		return new TriangleCounter(this.toCsrGraph()).clustCoeficient();
+	}
+
+	/**
+	 * Converte o grafo para {@link CsrGraph}, renumerando os vertices para o
+	 * intervalo [0, V). Quando os identificadores ja' formam esse intervalo,
+	 * sao mantidos. Vizinhos que nao sao vertices do grafo sao descartados.
+	 * 
+	 * Custo: Theta(V+E)
+	 */
+	private CsrGraph toCsrGraph() {
+		int n = adjList.size();
+		int[] ids = new int[n];
+		boolean dense = true;
+		int k = 0;
+		for (Integer u : adjList.keySet()) {
+			ids[k++] = u;
+			if (u < 0 || u >= n)
+				dense = false;
+		}
+		HashMap<Integer, Integer> index = null;
+		if (!dense) {
+			index = new HashMap<Integer, Integer>(n * 2);
+			for (int i = 0; i < n; i++)
+				index.put(ids[i], i);
+		}
+		int[] offsets = new int[n + 1];
+		int[] targets = new int[(int) Math.min(Integer.MAX_VALUE,
+				2L * edgeCount)];
+		int pos = 0;
+		for (int i = 0; i < n; i++) {
+			int u = dense ? i : ids[i];
+			HashSet<Integer> adjU = adjList.get(u);
+			if (adjU == null)
+				adjU = new HashSet<Integer>();
+			if (pos + adjU.size() > targets.length)
+				targets = Arrays.copyOf(targets, pos + adjU.size());
+			for (Integer v : adjU) {
+				if (dense) {
+					if (adjList.containsKey(v))
+						targets[pos++] = v;
+				} else {
+					Integer j = index.get(v);
+					if (j != null)
+						targets[pos++] = j;
 				}
 			}
-			if (c == 0)
-				coefByVertex.put(u, (float) 0);
-			else
-				coefByVertex.put(u, (float) count / 2 / c);
+			offsets[i + 1] = pos;
 		}
-		// Soma os coeficientes de agrupamento de todos os vertices
-		Iterator<Float> itrF = coefByVertex.values().iterator();
-		float sum = 0;
-		while (itrF.hasNext()) {
-			sum += itrF.next();
-		}
-		// Calcula a media
-		return sum / (float) coefByVertex.size();
+		return new CsrGraph(offsets, Arrays.copyOf(targets, pos));
 	}
 
 	/**
-	 * Efetua a busca em largura no grafo (breadth-first search).
+	 * Efetua a busca em largura no grafo (breadth-first search). Os vertices
+	 * devem ser numerados de 0 a V-1.
+	 * 
+	 * Custo: Theta(V+E), incluindo a copia das listas para vetores.
 	 * 
 	 * @param s
 	 *            No de inicio da busca.
 	 * @return Dados dos nos visitados.
 	 */
-	public NodeColor[] bfs(int s) {
-		// Cria um vetor para o controle das cores dos nos. O(n).
-		NodeColor[] nodes = this.initNodes();
-		ArrayDeque<Integer> q = new ArrayDeque<Integer>();
-		q.push(s);
-		while (!q.isEmpty()) {
-			Integer u = q.pop();
-			Iterator<Integer> adjU = adjList.get(u).iterator(); // nos
-																// adjacentes de
-																// U
-			while (adjU.hasNext()) {
-				Integer v = adjU.next();
-				if (nodes[v].color == NodeColor.WHITE) {
-					nodes[v].color = NodeColor.GRAY;
-					nodes[v].d = nodes[u].d + 1;
-					nodes[v].p = u;
-					q.push(v);
-				}
-			}
-			nodes[u].color = NodeColor.BLACK;
-		}
-		return nodes;
+	public Traversal bfs(int s) {
+		IntBuffer[] arcs = this.toArcBuffers();
+		return Traversal.bfs(arcs[0], arcs[1], s);
 	}
 
 	/**
-	 * Efetua a busca em profundidade no grafo (depth-first search).
+	 * Efetua a busca em profundidade no grafo (depth-first search). Os
+	 * vertices devem ser numerados de 0 a V-1.
 	 * 
 	 * @return Dados dos nos visitados.
 	 */
-	public NodeColor[] dfs() {
-		// Cria um vetor para o controle das cores dos nos. O(n).
-		NodeColor[] nodes = this.initNodes();
-		Integer time = 0;
-		for (int u = 0; u < nodes.length; u++) {
-			if (nodes[u].color == NodeColor.WHITE)
-				DFS_Visit(u, nodes, time);
-		}
-		return nodes;
+	public Traversal dfs() {
+		IntBuffer[] arcs = this.toArcBuffers();
+		return Traversal.dfs(arcs[0], arcs[1], -1);
 	}
 
 	/**
-	 * Efetua a busca em profundidade no grafo (depth-first search).
+	 * Efetua a busca em profundidade no grafo (depth-first search). Os
+	 * vertices devem ser numerados de 0 a V-1.
 	 * 
 	 * @param s
 	 *            No de inicio da busca.
 	 * @return Dados dos nos visitados.
 	 */
-	public NodeColor[] dfs(int s) {
-		// Cria um vetor para o controle das cores dos nos. O(n).
-		NodeColor[] nodes = this.initNodes();
-		Integer time = 0;
-		DFS_Visit(s, nodes, time);
-		return nodes;
-	}
-
-	private void DFS_Visit(int u, NodeColor[] nodes, Integer time) {
-		time += 1;
-		nodes[u].color = NodeColor.GRAY;
-		nodes[u].d = time;
-		Iterator<Integer> adjU = adjList.get(u).iterator(); // nos adjacentes de
-															// U
-		while (adjU.hasNext()) {
-			Integer v = adjU.next();
-			if (nodes[v].color == NodeColor.WHITE)
-				DFS_Visit(v, nodes, time);
-		}
-		time += 1;
-		nodes[u].color = NodeColor.BLACK;
-		nodes[u].f = time;
+	public Traversal dfs(int s) {
+		IntBuffer[] arcs = this.toArcBuffers();
+		return Traversal.dfs(arcs[0], arcs[1], s);
 	}
 
 	/**
-	 * Inicializa os nos para busca BFS ou DFS.
+	 * Copia os arcos, no sentido em que estao armazenados, para vetores no
+	 * formato CSR, mantendo os identificadores dos vertices.
+	 * 
+	 * Custo: Theta(V+E)
 	 * 
-	 * @return
+	 * @return Vetores {offsets, targets}.
 	 */
-	private NodeColor[] initNodes() {
-		NodeColor[] nodes = new NodeColor[adjList.size()];
-		for (int i = 0; i < nodes.length; i++)
-			nodes[i] = new NodeColor(i);
-		return nodes;
+	private IntBuffer[] toArcBuffers() {
+		int n = adjList.size();
+		int[] offsets = new int[n + 1];
+		for (int u = 0; u < n; u++) {
+			HashSet<Integer> adjU = adjList.get(u);
+			offsets[u + 1] = offsets[u] + (adjU == null ? 0 : adjU.size());
+		}
+		int[] targets = new int[offsets[n]];
+		for (int u = 0; u < n; u++) {
+			HashSet<Integer> adjU = adjList.get(u);
+			if (adjU == null)
+				continue;
+			int pos = offsets[u];
+			for (Integer v : adjU)
+				targets[pos++] = v;
+		}
+		return new IntBuffer[] { IntBuffer.wrap(offsets),
+				IntBuffer.wrap(targets) };
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,176 @@
+package br.ufmg.dcc.paa.tp2;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+
+import br.ufmg.dcc.paa.tp2.util.IntList;
+
+/**
+ * Construcao em lote de grafos grandes a partir de vetores primitivos de
+ * arestas, sem Integers nem listas intermediarias.
+ * 
+ * As arestas sao acumuladas em dois {@link IntList} e distribuidas por
+ * contagem (counting sort) nos vetores CSR, que sao alocados uma unica vez com
+ * o tamanho exato. O mesmo lote pode gerar um {@link CsrGraph} ou um
+ * {@link Graph} com as tabelas ja' dimensionadas.
+ * 
+ * @author Wilson de Carvalho
+ */
+public class GraphBuilder {
+	private final int vertexCount;
+	private final IntList sources;
+	private final IntList destinations;
+
+	/**
+	 * @param vertexCount
+	 *            Numero de vertices; os identificadores ficam em [0,
+	 *            vertexCount).
+	 */
+	public GraphBuilder(int vertexCount) {
+		this(vertexCount, 16);
+	}
+
+	/**
+	 * @param vertexCount
+	 *            Numero de vertices; os identificadores ficam em [0,
+	 *            vertexCount).
+	 * @param expectedEdges
+	 *            Numero esperado de arestas, usado para dimensionar os vetores.
+	 */
+	public GraphBuilder(int vertexCount, int expectedEdges) {
+		if (vertexCount < 0)
+			throw new IllegalArgumentException("Numero de vertices invalido: "
+					+ vertexCount);
+		this.vertexCount = vertexCount;
+		this.sources = new IntList(expectedEdges);
+		this.destinations = new IntList(expectedEdges);
+	}
+
+	/**
+	 * Cria um construtor com as arestas (src[i], dst[i]).
+	 * 
+	 * Custo: Theta(E)
+	 * 
+	 * @throws IllegalArgumentException
+	 *             Se os vetores tiverem tamanhos diferentes ou algum vertice
+	 *             for invalido.
+	 */
+	public static GraphBuilder fromEdges(int vertexCount, int[] src, int[] dst) {
+		if (src.length != dst.length)
+			throw new IllegalArgumentException(
+					"Vetores de arestas com tamanhos diferentes.");
+		GraphBuilder builder = new GraphBuilder(vertexCount, src.length);
+		for (int i = 0; i < src.length; i++)
+			builder.addEdge(src[i], dst[i]);
+		return builder;
+	}
+
+	/**
+	 * Acrescenta a aresta nao direcionada (u, v). Repeticoes sao removidas na
+	 * construcao. Custo: O(1) amortizado
+	 * 
+	 * @throws IllegalArgumentException
+	 *             Se u ou v nao for um vertice valido.
+	 */
+	public void addEdge(int u, int v) {
+		if (u < 0 || u >= vertexCount || v < 0 || v >= vertexCount)
+			throw new IllegalArgumentException("Aresta invalida (" + u + ", "
+					+ v + ") para " + vertexCount + " vertices.");
+		sources.add(u);
+		destinations.add(v);
+	}
+
+	public int getVertexCount() {
+		return vertexCount;
+	}
+
+	/**
+	 * @return Numero de arestas acrescentadas, com repeticoes.
+	 */
+	public int getEdgeCount() {
+		return sources.size();
+	}
+
+	/**
+	 * Constroi o grafo CSR. As arestas sao distribuidas nos dois sentidos por
+	 * contagem, cada lista e' ordenada e as repeticoes removidas.
+	 * 
+	 * Custo: Theta(V+E) mais a ordenacao de cada lista.
+	 * 
+	 * @return Grafo CSR.
+	 */
+	public CsrGraph buildCsr() {
+		int[][] csr = this.scatter();
+		csr = CsrGraph.normalize(csr[0], csr[1]);
+		int[] offsets = csr[0];
+		int[] targets = csr[1];
+		int loops = 0;
+		for (int u = 0; u < vertexCount; u++) {
+			if (Arrays.binarySearch(targets, offsets[u], offsets[u + 1], u) >= 0)
+				loops++;
+		}
+		return new CsrGraph(IntBuffer.wrap(offsets), IntBuffer.wrap(targets),
+				loops);
+	}
+
+	/**
+	 * Constroi o grafo baseado em tabelas hash, com cada tabela dimensionada
+	 * pelo grau do vertice para evitar redimensionamentos.
+	 * 
+	 * Custo: Theta(V+E)
+	 * 
+	 * @return Grafo.
+	 */
+	public Graph buildGraph() {
+		CsrGraph csr = this.buildCsr();
+		HashMap<Integer, HashSet<Integer>> adjList = new HashMap<Integer, HashSet<Integer>>(
+				capacity(vertexCount));
+		for (int u = 0; u < vertexCount; u++) {
+			HashSet<Integer> adjU = new HashSet<Integer>(capacity(csr.degree(u)));
+			for (int i = csr.begin(u); i < csr.end(u); i++)
+				adjU.add(csr.target(i));
+			adjList.put(u, adjU);
+		}
+		return new Graph(adjList);
+	}
+
+	/**
+	 * Distribui as arestas nos dois sentidos em um vetor de tamanho exato.
+	 * Lacos sao armazenados uma unica vez.
+	 * 
+	 * @return Vetores {offsets, targets}, com as listas ainda nao ordenadas.
+	 */
+	private int[][] scatter() {
+		int m = sources.size();
+		int[] offsets = new int[vertexCount + 1];
+		for (int i = 0; i < m; i++) {
+			int u = sources.get(i);
+			int v = destinations.get(i);
+			offsets[u + 1]++;
+			if (u != v)
+				offsets[v + 1]++;
+		}
+		for (int u = 0; u < vertexCount; u++)
+			offsets[u + 1] += offsets[u];
+		int[] pos = Arrays.copyOf(offsets, vertexCount);
+		int[] targets = new int[offsets[vertexCount]];
+		for (int i = 0; i < m; i++) {
+			int u = sources.get(i);
+			int v = destinations.get(i);
+			targets[pos[u]++] = v;
+			if (u != v)
+				targets[pos[v]++] = u;
+		}
+		return new int[][] { offsets, targets };
+	}
+
+	/**
+	 * Capacidade inicial de uma tabela hash para n elementos com o fator de
+	 * carga padrao.
+	 */
+	private static int capacity(int n) {
+		return (int) (n / 0.75f) + 1;
+	}
+}
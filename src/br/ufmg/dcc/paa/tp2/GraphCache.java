@@ -0,0 +1,182 @@
+package br.ufmg.dcc.paa.tp2;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Cache de grafos ja' lidos, identificados pelo caminho canonico do arquivo.
+ * Uma entrada so' e' reaproveitada se a data de modificacao e o tamanho do
+ * arquivo nao tiverem mudado; caso contrario o grafo e' lido de novo.
+ * 
+ * Pedidos simultaneos do mesmo grafo compartilham uma unica leitura. Quando a
+ * memoria estimada dos grafos ultrapassa o orcamento, os grafos usados ha'
+ * mais tempo sao descartados (LRU); o grafo recem-lido nunca e' descartado,
+ * mesmo que sozinho ultrapasse o orcamento. Grafos mapeados de snapshots
+ * ficam fora da heap e nao contam para o orcamento.
+ * 
+ * @author Wilson de Carvalho
+ */
+public class GraphCache {
+	private final long budget;
+	private long used = 0;
+	// Em ordem de acesso: o primeiro e' o usado ha' mais tempo
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(
+			16, 0.75f, true);
+
+	private static class Entry {
+		final long modified;
+		final long length;
+		final FutureTask<CsrGraph> load;
+		long bytes = 0;
+
+		Entry(long modified, long length, FutureTask<CsrGraph> load) {
+			this.modified = modified;
+			this.length = length;
+			this.load = load;
+		}
+	}
+
+	/**
+	 * @param budget
+	 *            Memoria maxima estimada dos grafos mantidos, em bytes.
+	 */
+	public GraphCache(long budget) {
+		this.budget = budget;
+	}
+
+	/**
+	 * Retorna o grafo do arquivo, lendo-o se nao estiver no cache ou se o
+	 * arquivo tiver mudado.
+	 * 
+	 * @param fileName
+	 *            Arquivo do grafo, em lista de adjacencias ou snapshot.
+	 * @return Grafo.
+	 * @throws IOException
+	 *             Se o arquivo nao existir ou nao puder ser lido.
+	 */
+	public CsrGraph get(final String fileName) throws IOException {
+		File file = new File(fileName).getCanonicalFile();
+		if (!file.isFile())
+			throw new IOException("Arquivo nao encontrado: " + fileName);
+		String key = file.getPath();
+		long modified = file.lastModified();
+		long length = file.length();
+		Entry entry;
+		boolean owner = false;
+		synchronized (this) {
+			entry = entries.get(key);
+			if (entry != null
+					&& (entry.modified != modified || entry.length != length)) {
+				this.remove(key);
+				entry = null;
+			}
+			if (entry == null) {
+				final String path = key;
+				entry = new Entry(modified, length, new FutureTask<CsrGraph>(
+						new Callable<CsrGraph>() {
+							@Override
+							public CsrGraph call() {
+								return Main.readGraph(path, path);
+							}
+						}));
+				entries.put(key, entry);
+				owner = true;
+			}
+		}
+		// A leitura e' feita fora do bloco sincronizado, pela thread que criou
+		// a entrada; as demais esperam o mesmo resultado
+		if (owner)
+			entry.load.run();
+		CsrGraph graph;
+		try {
+			graph = entry.load.get();
+		} catch (InterruptedException ex) {
+			throw new IOException(ex);
+		} catch (ExecutionException ex) {
+			graph = null;
+		}
+		if (graph == null) {
+			synchronized (this) {
+				if (entries.get(key) == entry)
+					this.remove(key);
+			}
+			throw new IOException("Erro ao fazer a leitura do grafo "
+					+ fileName + ".");
+		}
+		if (owner) {
+			synchronized (this) {
+				if (entries.get(key) == entry) {
+					entry.bytes = heapBytes(graph);
+					used += entry.bytes;
+					this.evict(key);
+				}
+			}
+		}
+		return graph;
+	}
+
+	/**
+	 * @return Memoria estimada dos grafos mantidos, em bytes.
+	 */
+	public synchronized long getUsed() {
+		return used;
+	}
+
+	/**
+	 * @return Caminhos dos grafos mantidos, do usado ha' mais tempo ao mais
+	 *         recente.
+	 */
+	public synchronized List<String> keys() {
+		return new ArrayList<String>(entries.keySet());
+	}
+
+	/**
+	 * Descarta todos os grafos.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		used = 0;
+	}
+
+	/**
+	 * Descarta os grafos usados ha' mais tempo ate' que a memoria estimada
+	 * caiba no orcamento, preservando a entrada informada.
+	 */
+	private void evict(String keep) {
+		Iterator<Map.Entry<String, Entry>> itr = entries.entrySet().iterator();
+		while (used > budget && itr.hasNext()) {
+			Map.Entry<String, Entry> e = itr.next();
+			// Leituras em andamento ainda nao ocupam memoria contabilizada
+			if (e.getKey().equals(keep) || !e.getValue().load.isDone())
+				continue;
+			used -= e.getValue().bytes;
+			itr.remove();
+		}
+	}
+
+	private void remove(String key) {
+		Entry entry = entries.remove(key);
+		if (entry != null)
+			used -= entry.bytes;
+	}
+
+	/**
+	 * @return Bytes ocupados na heap pelos vetores CSR do grafo.
+	 */
+	private static long heapBytes(CsrGraph graph) {
+		long bytes = 0;
+		if (!graph.getOffsets().isDirect())
+			bytes += 4L * graph.getOffsets().capacity();
+		if (!graph.getTargets().isDirect())
+			bytes += 4L * graph.getTargets().capacity();
+		return bytes;
+	}
+}
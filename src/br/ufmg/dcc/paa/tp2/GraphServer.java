@@ -0,0 +1,413 @@
+package br.ufmg.dcc.paa.tp2;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import br.ufmg.dcc.paa.tp2.util.GraphReader;
+import br.ufmg.dcc.paa.tp2.util.IntList;
+import br.ufmg.dcc.paa.tp2.util.Metrics;
+
+/**
+ * Classe com metodo main para execucao do ADC como servidor residente. Os
+ * grafos sao lidos uma unica vez e mantidos num {@link GraphCache}, de modo
+ * que consultas repetidas sobre o mesmo grafo nao pagam a leitura do arquivo.
+ * 
+ * O servidor aceita conexoes apenas no endereco local (127.0.0.1). Como
+ * qualquer usuario da maquina pode se conectar, ao iniciar o servidor gera um
+ * token aleatorio e o grava num arquivo legivel apenas pelo seu dono; a
+ * primeira linha de cada conexao deve apresentar esse token, ou a conexao e'
+ * encerrada. Alem disso, apenas arquivos dentro do diretorio raiz (-raiz)
+ * podem ser lidos.
+ * 
+ * Cada conexao envia comandos, um por linha, e recebe uma linha de resposta
+ * por comando, iniciada por "OK" ou "ERRO":
+ * 
+ * <pre>
+ * token valor                        -> OK (obrigatorio, primeira linha)
+ * adc grafo sementes                 -> OK |A| |B| eAA eBB eAB
+ * metricas grafo sementes sybil      -> OK (as 10 metricas de metricsG*.txt)
+ * regiao grafo sementes honesta|sybil -> OK vertices da regiao
+ * estado                             -> OK memoriaMB grafos...
+ * sair                               -> encerra a conexao
+ * desligar                           -> encerra o servidor
+ * </pre>
+ * 
+ * Os arquivos sao relativos ao diretorio raiz. As sementes sao vertices
+ * separados por virgula (por exemplo, 1,5,7). As conexoes sao atendidas por um
+ * pool de tamanho fixo, de modo que consultas sobre grafos diferentes sao
+ * processadas ao mesmo tempo.
+ * 
+ * @author Wilson de Carvalho
+ */
+public class GraphServer {
+	private static final long MB = 1024 * 1024;
+	// Tempo maximo para o cliente apresentar o token, em ms
+	private static final int AUTH_TIMEOUT = 10000;
+
+	// Numero de conexoes atendidas ao mesmo tempo
+	private static int workers = Runtime.getRuntime().availableProcessors();
+	// Threads de cada conexao; 0 divide os nucleos entre as conexoes
+	private static int threads = 0;
+	// Orcamento de memoria dos grafos mantidos, em MB
+	private static int memoryBudget = (int) (Runtime.getRuntime().maxMemory()
+			/ 2 / MB);
+	// Diretorio com os arquivos que os clientes podem ler
+	private static String rootDir = ".";
+	// Arquivo em que o token de acesso e' gravado
+	private static String tokenFile = "graphServer.token";
+
+	private final GraphCache cache;
+	private final ServerSocket server;
+	private final ExecutorService pool;
+	// Diretorio raiz, canonico e terminado pelo separador
+	private final String root;
+	private final Path tokenPath;
+	private final byte[] token;
+
+	/**
+	 * Abre o servidor e grava o token de acesso.
+	 * 
+	 * @param root
+	 *            Diretorio com os arquivos que os clientes podem ler.
+	 * @param tokenFile
+	 *            Arquivo do token, criado com permissao apenas para o dono e
+	 *            removido quando o servidor e' desligado.
+	 */
+	public GraphServer(int port, GraphCache cache, int workers, String root,
+			String tokenFile) throws IOException {
+		File dir = new File(root).getCanonicalFile();
+		if (!dir.isDirectory())
+			throw new IOException("Diretorio raiz invalido: " + root);
+		String path = dir.getPath();
+		this.root = path.endsWith(File.separator) ? path : path
+				+ File.separator;
+		this.cache = cache;
+		this.tokenPath = Paths.get(tokenFile);
+		this.token = createToken(tokenPath);
+		this.server = new ServerSocket(port, 50,
+				InetAddress.getByName("127.0.0.1"));
+		this.pool = Executors.newFixedThreadPool(workers);
+	}
+
+	public static void main(String[] args) {
+		if (args.length < 1 || !parseOptions(args)) {
+			System.out.println("E' necessaria a porta local do servidor.");
+			System.out.println("Opcoes (apos a porta):");
+			System.out
+					.println("\t-trabalhos=N - Atende ate' N conexoes ao mesmo tempo");
+			System.out
+					.println("\t-memoria=MB - Memoria maxima estimada dos grafos mantidos");
+			System.out
+					.println("\t-raiz=diretorio - Diretorio dos arquivos que podem ser lidos (padrao: atual)");
+			System.out
+					.println("\t-token=arquivo - Arquivo do token de acesso (padrao: graphServer.token)");
+			System.out
+					.println("\t-threads=N - Threads de cada conexao (padrao: nucleos / trabalhos)");
+			System.out
+					.println("\tAlem de -leitura, -saltos e -motor, como em Main");
+			return;
+		}
+		try {
+			GraphServer server = new GraphServer(Integer.parseInt(args[0]),
+					new GraphCache(memoryBudget * MB), workers, rootDir,
+					tokenFile);
+			System.out.println("Servidor aguardando conexoes na porta "
+					+ args[0] + " (orcamento de " + memoryBudget
+					+ " MB, token em '" + tokenFile + "').");
+			server.serve();
+		} catch (NumberFormatException ex) {
+			System.out.println("Porta invalida: " + args[0]);
+		} catch (IOException ex) {
+			ex.printStackTrace();
+			System.out.println("Erro ao iniciar o servidor.");
+		}
+	}
+
+	/**
+	 * Le as opcoes do servidor e repassa a {@link Main} apenas as que se
+	 * aplicam a cada conexao (-leitura, -saltos e -motor); as demais opcoes
+	 * de Main sao rejeitadas.
+	 * 
+	 * @return Falso se alguma opcao for invalida.
+	 */
+	private static boolean parseOptions(String[] args) {
+		List<String> common = new ArrayList<String>();
+		for (int i = 1; i < args.length; i++) {
+			String arg = args[i];
+			try {
+				if (arg.startsWith("-trabalhos=")) {
+					workers = Integer.parseInt(arg.substring(11));
+				} else if (arg.startsWith("-memoria=")) {
+					memoryBudget = Integer.parseInt(arg.substring(9));
+				} else if (arg.startsWith("-raiz=")) {
+					rootDir = arg.substring(6);
+				} else if (arg.startsWith("-token=")) {
+					tokenFile = arg.substring(7);
+				} else if (arg.startsWith("-threads=")) {
+					threads = Integer.parseInt(arg.substring(9));
+				} else if (arg.startsWith("-leitura=")
+						|| arg.startsWith("-saltos=")
+						|| arg.startsWith("-motor=")) {
+					common.add(arg);
+				} else {
+					System.out.println("Opcao nao suportada no servidor: "
+							+ arg);
+					return false;
+				}
+			} catch (NumberFormatException ex) {
+				System.out.println("Opcao invalida: " + arg);
+				return false;
+			}
+		}
+		if (workers < 1 || memoryBudget < 1 || threads < 0) {
+			System.out.println("Opcao invalida: numero de conexoes, memoria "
+					+ "e threads devem ser positivos.");
+			return false;
+		}
+		return Main.parseOptions(common.toArray(new String[common.size()]), 0);
+	}
+
+	/**
+	 * Aceita conexoes ate' que algum cliente envie "desligar".
+	 */
+	public void serve() {
+		try {
+			while (true) {
+				final Socket socket = server.accept();
+				pool.execute(new Runnable() {
+					@Override
+					public void run() {
+						handle(socket);
+					}
+				});
+			}
+		} catch (SocketException ex) {
+			// Socket fechado por "desligar"
+		} catch (IOException ex) {
+			ex.printStackTrace();
+		} finally {
+			pool.shutdown();
+			cache.clear();
+			try {
+				Files.deleteIfExists(tokenPath);
+			} catch (IOException ex) {
+				ex.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Gera um token aleatorio de 128 bits e o grava no arquivo, criado com
+	 * permissao de leitura e escrita apenas para o dono.
+	 * 
+	 * @return Token, em hexadecimal.
+	 */
+	private static byte[] createToken(Path path) throws IOException {
+		byte[] random = new byte[16];
+		new SecureRandom().nextBytes(random);
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < random.length; i++)
+			sb.append(String.format("%02x", random[i] & 0xff));
+		byte[] token = sb.toString().getBytes("UTF-8");
+		Files.deleteIfExists(path);
+		try {
+			Files.createFile(path, PosixFilePermissions.asFileAttribute(
+					PosixFilePermissions.fromString("rw-------")));
+		} catch (UnsupportedOperationException ex) {
+			// Sistema de arquivos sem permissoes POSIX
+			Files.createFile(path);
+			File file = path.toFile();
+			file.setReadable(false, false);
+			file.setWritable(false, false);
+			file.setReadable(true, true);
+			file.setWritable(true, true);
+		}
+		Files.write(path, token);
+		return token;
+	}
+
+	/**
+	 * Confere a linha "token valor" em tempo constante.
+	 */
+	private boolean authenticate(String line) throws IOException {
+		if (line == null)
+			return false;
+		String[] fields = line.trim().split("\\s+");
+		return fields.length == 2 && fields[0].equals("token")
+				&& MessageDigest.isEqual(fields[1].getBytes("UTF-8"), token);
+	}
+
+	/**
+	 * Resolve um arquivo pedido por um cliente, relativo ao diretorio raiz.
+	 * Caminhos que saem da raiz, inclusive por ".." ou links simbolicos, sao
+	 * recusados.
+	 * 
+	 * @return Caminho canonico do arquivo.
+	 */
+	private String resolve(String fileName) throws IOException {
+		File file = new File(fileName);
+		if (!file.isAbsolute())
+			file = new File(root, fileName);
+		String path = file.getCanonicalPath();
+		if (!path.startsWith(root))
+			throw new IOException("Arquivo fora do diretorio raiz: "
+					+ fileName);
+		return path;
+	}
+
+	/**
+	 * Confere o token na primeira linha da conexao e atende os comandos ate'
+	 * "sair" ou o fim da entrada. O token deve chegar em ate' AUTH_TIMEOUT ms,
+	 * para que conexoes ociosas nao ocupem o pool.
+	 */
+	private void handle(Socket socket) {
+		try {
+			try {
+				BufferedReader in = new BufferedReader(new InputStreamReader(
+						socket.getInputStream(), "UTF-8"));
+				PrintWriter out = new PrintWriter(new OutputStreamWriter(
+						socket.getOutputStream(), "UTF-8"), true);
+				socket.setSoTimeout(AUTH_TIMEOUT);
+				if (!this.authenticate(in.readLine())) {
+					out.println("ERRO Token invalido.");
+					return;
+				}
+				socket.setSoTimeout(0);
+				out.println("OK");
+				String line;
+				while ((line = in.readLine()) != null) {
+					String[] fields = line.trim().split("\\s+");
+					if (fields[0].equals("sair"))
+						break;
+					if (fields[0].equals("desligar")) {
+						out.println("OK");
+						server.close();
+						break;
+					}
+					out.println(this.execute(fields));
+				}
+			} finally {
+				socket.close();
+			}
+		} catch (SocketTimeoutException ex) {
+			// Token nao apresentado a tempo
+		} catch (IOException ex) {
+			ex.printStackTrace();
+		}
+	}
+
+	/**
+	 * Executa um comando.
+	 * 
+	 * @return Linha de resposta.
+	 */
+	private String execute(String[] fields) {
+		String cmd = fields[0];
+		try {
+			if (cmd.equals("estado") && fields.length == 1) {
+				StringBuilder sb = new StringBuilder("OK ");
+				sb.append(cache.getUsed() / MB);
+				List<String> keys = cache.keys();
+				for (int i = 0; i < keys.size(); i++)
+					sb.append(' ').append(keys.get(i));
+				return sb.toString();
+			}
+			if (cmd.equals("adc") && fields.length == 3) {
+				Partition p = this.separate(fields[1], fields[2]);
+				return "OK " + p.getSizeA() + " " + p.getSizeB() + " "
+						+ p.getEAA() + " " + p.getEBB() + " " + p.getEAB();
+			}
+			if (cmd.equals("metricas") && fields.length == 4) {
+				GraphReader gr = new GraphReader();
+				int[] sybil = gr.readSybil(this.resolve(fields[3]));
+				if (sybil == null)
+					return "ERRO Erro ao fazer a leitura dos vertices sybil.";
+				Partition p = this.separate(fields[1], fields[2]);
+				sybil = gr.validateSybil(sybil, p.getGraph().getVertexCount(),
+						System.out);
+				Metrics met = newAdc().calculateMetrics(p, sybil);
+				return "OK " + met.toString().replace('\n', ' ');
+			}
+			if (cmd.equals("regiao") && fields.length == 4
+					&& (fields[3].equals("honesta") || fields[3]
+							.equals("sybil"))) {
+				boolean regionA = fields[3].equals("honesta");
+				Partition p = this.separate(fields[1], fields[2]);
+				StringBuilder sb = new StringBuilder("OK");
+				for (int u = 0; u < p.getGraph().getVertexCount(); u++) {
+					if (p.inA(u) == regionA)
+						sb.append(' ').append(u);
+				}
+				return sb.toString();
+			}
+			return "ERRO Comando invalido: " + join(fields);
+		} catch (IOException ex) {
+			return "ERRO " + ex.getMessage();
+		} catch (NumberFormatException ex) {
+			return "ERRO Sementes invalidas: " + ex.getMessage();
+		} catch (RuntimeException ex) {
+			ex.printStackTrace();
+			return "ERRO " + ex;
+		}
+	}
+
+	/**
+	 * Separa as regioes honesta e Sybil do grafo a partir das sementes.
+	 */
+	private Partition separate(String graphFile, String seedList)
+			throws IOException {
+		CsrGraph graph = cache.get(this.resolve(graphFile));
+		String[] tokens = seedList.split(",");
+		IntList seeds = new IntList(tokens.length);
+		for (int i = 0; i < tokens.length; i++)
+			seeds.add(Integer.parseInt(tokens[i]));
+		ADC adc = newAdc();
+		Partition partition = adc.createPartition(graph, seeds.toArray());
+		adc.expand(partition);
+		return partition;
+	}
+
+	/**
+	 * @return ADC com as opcoes do servidor e mensagens de progresso
+	 *         descartadas.
+	 */
+	private static ADC newAdc() {
+		ADC adc = new ADC();
+		adc.setMaxHops(Main.maxHops);
+		adc.setEngine(Main.engine);
+		adc.setThreads(threads > 0 ? threads : Main.threadsPerJob(workers));
+		adc.setOutput(new PrintStream(new ByteArrayOutputStream()));
+		return adc;
+	}
+
+	private static String join(String[] fields) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < fields.length; i++) {
+			if (i > 0)
+				sb.append(' ');
+			sb.append(fields[i]);
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,219 @@
+package br.ufmg.dcc.paa.tp2;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Formato binario versionado para {@link CsrGraph}, que evita interpretar o
+ * arquivo texto a cada execucao.
+ * 
+ * Layout (little-endian):
+ * 
+ * <pre>
+ * int  MAGIC (0x54503247, gravado como os bytes "G2PT")
+ * int  VERSION
+ * int  V (numero de vertices)
+ * int  numero de lacos
+ * long T (tamanho do vetor targets)
+ * int  offsets[V + 1]
+ * int  targets[T]
+ * </pre>
+ * 
+ * A leitura mapeia os vetores em memoria, de modo que o grafo nao e' copiado
+ * para a heap, e confere numa unica passada que os vetores formam um grafo
+ * CSR valido.
+ * 
+ * @author Wilson de Carvalho
+ */
+public class GraphSnapshot {
+	public static final int MAGIC = 0x54503247;
+	public static final int VERSION = 1;
+	private static final int HEADER_SIZE = 24;
+	// Tamanho do buffer usado na escrita
+	private static final int WRITE_BUFFER = 1 << 20;
+
+	/**
+	 * Verifica se o arquivo comeca com o identificador do formato.
+	 * 
+	 * @param fileName
+	 *            Nome do arquivo.
+	 * @return Verdadeiro se for um snapshot.
+	 */
+	public static boolean isSnapshot(String fileName) {
+		RandomAccessFile file = null;
+		try {
+			try {
+				file = new RandomAccessFile(fileName, "r");
+				if (file.length() < HEADER_SIZE)
+					return false;
+				ByteBuffer header = ByteBuffer.allocate(4).order(
+						ByteOrder.LITTLE_ENDIAN);
+				file.getChannel().read(header, 0);
+				return header.getInt(0) == MAGIC;
+			} finally {
+				if (file != null)
+					file.close();
+			}
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Salva o grafo no formato binario.
+	 * 
+	 * Custo: Theta(V+E)
+	 * 
+	 * @param graph
+	 *            Grafo.
+	 * @param fileName
+	 *            Nome do arquivo.
+	 */
+	public static void write(CsrGraph graph, String fileName)
+			throws IOException {
+		RandomAccessFile file = null;
+		try {
+			file = new RandomAccessFile(fileName, "rw");
+			file.setLength(0);
+			FileChannel channel = file.getChannel();
+			ByteBuffer buf = ByteBuffer.allocateDirect(WRITE_BUFFER).order(
+					ByteOrder.LITTLE_ENDIAN);
+			buf.putInt(MAGIC);
+			buf.putInt(VERSION);
+			buf.putInt(graph.getVertexCount());
+			buf.putInt(graph.getLoopCount());
+			buf.putLong(graph.getTargets().limit());
+			writeInts(channel, buf, graph.getOffsets());
+			writeInts(channel, buf, graph.getTargets());
+			buf.flip();
+			while (buf.hasRemaining())
+				channel.write(buf);
+		} finally {
+			if (file != null)
+				file.close();
+		}
+	}
+
+	private static void writeInts(FileChannel channel, ByteBuffer buf,
+			IntBuffer values) throws IOException {
+		for (int i = 0; i < values.limit(); i++) {
+			if (buf.remaining() < 4) {
+				buf.flip();
+				while (buf.hasRemaining())
+					channel.write(buf);
+				buf.clear();
+			}
+			buf.putInt(values.get(i));
+		}
+	}
+
+	/**
+	 * Carrega um grafo salvo por {@link #write(CsrGraph, String)}, mapeando os
+	 * vetores em memoria. O mapeamento permanece valido depois que o arquivo e'
+	 * fechado.
+	 * 
+	 * Custo: Theta(V+E) para a validacao dos vetores mapeados.
+	 * 
+	 * @param fileName
+	 *            Nome do arquivo.
+	 * @return Grafo.
+	 * @throws IOException
+	 *             Se o arquivo nao for um snapshot valido desta versao.
+	 */
+	public static CsrGraph read(String fileName) throws IOException {
+		RandomAccessFile file = null;
+		try {
+			file = new RandomAccessFile(fileName, "r");
+			FileChannel channel = file.getChannel();
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(
+					ByteOrder.LITTLE_ENDIAN);
+			while (header.hasRemaining())
+				if (channel.read(header, header.position()) < 0)
+					throw new IOException("Snapshot incompleto: " + fileName);
+			if (header.getInt(0) != MAGIC)
+				throw new IOException("Arquivo nao e' um snapshot: "
+						+ fileName);
+			if (header.getInt(4) != VERSION)
+				throw new IOException("Versao de snapshot nao suportada: "
+						+ header.getInt(4));
+			int vertexCount = header.getInt(8);
+			int loopCount = header.getInt(12);
+			long targetCount = header.getLong(16);
+			long offsetsBytes = 4L * (vertexCount + 1);
+			long targetsBytes = 4L * targetCount;
+			if (vertexCount < 0 || targetCount < 0 || loopCount < 0
+					|| channel.size() != HEADER_SIZE + offsetsBytes + targetsBytes)
+				throw new IOException("Snapshot corrompido: " + fileName);
+			IntBuffer offsets = map(channel, HEADER_SIZE, offsetsBytes);
+			IntBuffer targets = map(channel, HEADER_SIZE + offsetsBytes,
+					targetsBytes);
+			if (!isValid(offsets, targets, vertexCount, loopCount))
+				throw new IOException("Snapshot corrompido: " + fileName);
+			return new CsrGraph(offsets, targets, loopCount);
+		} finally {
+			if (file != null)
+				file.close();
+		}
+	}
+
+	/**
+	 * Confere se os vetores formam um grafo CSR com vertexCount vertices:
+	 * offsets comeca em 0, e' nao decrescente e termina no tamanho de targets,
+	 * cada lista de adjacencias e' estritamente crescente, com vizinhos em
+	 * [0, V), e o numero de lacos (u em Adj(u)) e' loopCount. Sem essa
+	 * verificacao, um arquivo corrompido so' causaria erro de indice dentro
+	 * do processamento, ou resultados errados nas buscas binarias e
+	 * intersecoes que dependem da ordenacao.
+	 * 
+	 * Custo: Theta(V+E)
+	 */
+	private static boolean isValid(IntBuffer offsets, IntBuffer targets,
+			int vertexCount, int loopCount) {
+		if (offsets.get(0) != 0
+				|| offsets.get(vertexCount) != targets.limit())
+			return false;
+		int loops = 0;
+		for (int u = 0; u < vertexCount; u++) {
+			int begin = offsets.get(u);
+			int end = offsets.get(u + 1);
+			if (begin > end)
+				return false;
+			int previous = -1;
+			for (int i = begin; i < end; i++) {
+				int v = targets.get(i);
+				if (v <= previous || v >= vertexCount)
+					return false;
+				if (v == u)
+					loops++;
+				previous = v;
+			}
+		}
+		return loops == loopCount;
+	}
+
+	/**
+	 * Mapeia um trecho do arquivo como vetor de inteiros. Trechos acima do
+	 * limite de 2 GB de um mapeamento sao copiados para a heap.
+	 */
+	private static IntBuffer map(FileChannel channel, long position,
+			long bytes) throws IOException {
+		if (bytes <= Integer.MAX_VALUE)
+			return channel.map(FileChannel.MapMode.READ_ONLY, position, bytes)
+					.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+		int[] values = new int[(int) (bytes / 4)];
+		long window = 1 << 28;
+		int pos = 0;
+		for (long start = 0; start < bytes; start += window) {
+			long length = Math.min(window, bytes - start);
+			channel.map(FileChannel.MapMode.READ_ONLY, position + start,
+					length).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer()
+					.get(values, pos, (int) (length / 4));
+			pos += (int) (length / 4);
+		}
+		return IntBuffer.wrap(values);
+	}
+}
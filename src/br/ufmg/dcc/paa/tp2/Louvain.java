@@ -0,0 +1,442 @@
+package br.ufmg.dcc.paa.tp2;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import br.ufmg.dcc.paa.tp2.util.Tuple3;
+
+/**
+ * Deteccao de comunidades em varios niveis pela maximizacao da modularidade
+ * (Blondel et al., "Fast unfolding of communities in large networks").
+ * 
+ * Cada nivel alterna duas fases: (1) movimentos locais, em que cada vertice
+ * passa para a comunidade vizinha de maior ganho de modularidade, ate' que
+ * nenhum movimento melhore a modularidade; (2) agregacao, em que cada
+ * comunidade vira um vertice de um grafo ponderado menor, com um laco de peso
+ * igual as arestas internas. O processo se repete ate' que nenhum vertice mude
+ * de comunidade.
+ * 
+ * Os movimentos locais sao feitos em paralelo sobre blocos de vertices. O
+ * peso total de cada comunidade e' mantido num {@link AtomicLongArray}; cada
+ * thread le as comunidades dos vizinhos sem sincronizacao, o que pode atrasar
+ * a convergencia de uma passada mas nao a torna incorreta, ja' que a
+ * modularidade e' recalculada ao final de cada passada.
+ * 
+ * @author Wilson de Carvalho
+ */
+public class Louvain {
+	// Vertices por bloco de trabalho
+	private static final int CHUNK = 1024;
+	// Numero maximo de passadas de movimentos locais por nivel
+	private static final int MAX_PASSES = 32;
+	// Ganho minimo de modularidade para continuar as passadas
+	private static final double MIN_GAIN = 1e-4;
+
+	private final CsrGraph graph;
+	private final int threads;
+	// Comunidade de cada vertice do grafo original
+	private int[] labels;
+	private int communityCount;
+	private double modularity;
+	private int levels;
+
+	/**
+	 * @param graph
+	 *            Grafo.
+	 */
+	public Louvain(CsrGraph graph) {
+		this(graph, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param graph
+	 *            Grafo.
+	 * @param threads
+	 *            Numero de threads.
+	 */
+	public Louvain(CsrGraph graph, int threads) {
+		this.graph = graph;
+		this.threads = threads;
+	}
+
+	public CsrGraph getGraph() {
+		return graph;
+	}
+
+	/**
+	 * @return Comunidade de cada vertice, de 0 a getCommunityCount()-1.
+	 */
+	public int[] getLabels() {
+		return labels;
+	}
+
+	public int getCommunityCount() {
+		return communityCount;
+	}
+
+	public double getModularity() {
+		return modularity;
+	}
+
+	public int getLevels() {
+		return levels;
+	}
+
+	/**
+	 * Detecta as comunidades.
+	 * 
+	 * Custo: O(E) por passada de movimentos locais, tipicamente poucas
+	 * passadas e poucos niveis.
+	 * 
+	 * @return Comunidade de cada vertice.
+	 */
+	public int[] detect() {
+		int n = graph.getVertexCount();
+		// Nivel 0: cada aresta tem peso 1 em cada sentido; lacos, armazenados
+		// uma unica vez, tem peso 2 para contar duas vezes no grau
+		int[] offsets = new int[n + 1];
+		int[] targets = new int[graph.getTargets().limit()];
+		long[] weights = new long[targets.length];
+		for (int u = 0; u < n; u++) {
+			offsets[u + 1] = graph.end(u);
+			for (int i = graph.begin(u); i < graph.end(u); i++) {
+				targets[i] = graph.target(i);
+				weights[i] = (targets[i] == u) ? 2 : 1;
+			}
+		}
+		labels = new int[n];
+		for (int u = 0; u < n; u++)
+			labels[u] = u;
+		levels = 0;
+		ExecutorService pool = (threads > 1) ? Executors
+				.newFixedThreadPool(threads) : null;
+		try {
+			while (true) {
+				int[] comm = this.moveNodes(pool, offsets, targets, weights);
+				levels++;
+				// Renumera as comunidades de 0 a k-1
+				int levelSize = offsets.length - 1;
+				int[] dense = new int[levelSize];
+				Arrays.fill(dense, -1);
+				int k = 0;
+				for (int i = 0; i < levelSize; i++) {
+					if (dense[comm[i]] < 0)
+						dense[comm[i]] = k++;
+				}
+				for (int i = 0; i < levelSize; i++)
+					comm[i] = dense[comm[i]];
+				for (int u = 0; u < n; u++)
+					labels[u] = comm[labels[u]];
+				communityCount = k;
+				modularity = modularity(offsets, targets, weights, comm, k);
+				if (k == levelSize)
+					break;
+				Tuple3<int[], int[], long[]> coarse = aggregate(offsets,
+						targets, weights, comm, k);
+				offsets = coarse._1;
+				targets = coarse._2;
+				weights = coarse._3;
+			}
+		} finally {
+			if (pool != null)
+				pool.shutdown();
+		}
+		return labels;
+	}
+
+	/**
+	 * Fase de movimentos locais de um nivel.
+	 * 
+	 * @return Comunidade de cada vertice do nivel (nao renumerada).
+	 */
+	private int[] moveNodes(ExecutorService pool, final int[] offsets,
+			final int[] targets, final long[] weights) {
+		final int n = offsets.length - 1;
+		// Grau ponderado de cada vertice
+		final long[] k = new long[n];
+		long total = 0;
+		for (int i = 0; i < n; i++) {
+			for (int a = offsets[i]; a < offsets[i + 1]; a++)
+				k[i] += weights[a];
+			total += k[i];
+		}
+		// Soma dos pesos de todas as arestas nos dois sentidos (2m)
+		final double m2 = total;
+		final int[] comm = new int[n];
+		final AtomicLongArray tot = new AtomicLongArray(n);
+		for (int i = 0; i < n; i++) {
+			comm[i] = i;
+			tot.set(i, k[i]);
+		}
+		if (m2 == 0)
+			return comm;
+		double q = modularity(offsets, targets, weights, comm, n);
+		// Comunidades antes da passada: movimentos simultaneos de vizinhos
+		// podem reduzir a modularidade, e nesse caso a passada e' desfeita
+		int[] previous = new int[n];
+		for (int pass = 0; pass < MAX_PASSES; pass++) {
+			System.arraycopy(comm, 0, previous, 0, n);
+			final AtomicInteger nextChunk = new AtomicInteger(0);
+			final AtomicInteger moves = new AtomicInteger(0);
+			Runnable worker = new Runnable() {
+				@Override
+				public void run() {
+					// Peso das arestas de i para cada comunidade vizinha; -1
+					// indica comunidade ainda nao vista
+					long[] neighWeight = new long[n];
+					Arrays.fill(neighWeight, -1);
+					int[] touched = new int[n];
+					int localMoves = 0;
+					int start;
+					while ((start = nextChunk.getAndAdd(CHUNK)) < n) {
+						int end = Math.min(start + CHUNK, n);
+						for (int i = start; i < end; i++) {
+							if (moveNode(i, offsets, targets, weights, k, m2,
+									comm, tot, neighWeight, touched))
+								localMoves++;
+						}
+					}
+					moves.addAndGet(localMoves);
+				}
+			};
+			this.runWorkers(pool, worker);
+			if (moves.get() == 0)
+				break;
+			double newQ = modularity(offsets, targets, weights, comm, n);
+			if (newQ < q) {
+				System.arraycopy(previous, 0, comm, 0, n);
+				for (int i = 0; i < n; i++)
+					tot.set(i, 0);
+				for (int i = 0; i < n; i++)
+					tot.addAndGet(comm[i], k[i]);
+				break;
+			}
+			if (newQ - q < MIN_GAIN)
+				break;
+			q = newQ;
+		}
+		return comm;
+	}
+
+	/**
+	 * Move o vertice i para a comunidade vizinha de maior ganho de
+	 * modularidade, k_i,in(c) - tot(c) * k_i / 2m, se for melhor que a atual.
+	 * 
+	 * Custo: Theta(Adj(i))
+	 * 
+	 * @return Verdadeiro se i mudou de comunidade.
+	 */
+	private static boolean moveNode(int i, int[] offsets, int[] targets,
+			long[] weights, long[] k, double m2, int[] comm,
+			AtomicLongArray tot, long[] neighWeight, int[] touched) {
+		int current = comm[i];
+		int count = 0;
+		neighWeight[current] = 0;
+		touched[count++] = current;
+		for (int a = offsets[i]; a < offsets[i + 1]; a++) {
+			int j = targets[a];
+			if (j == i)
+				continue;
+			int c = comm[j];
+			if (neighWeight[c] < 0) {
+				neighWeight[c] = 0;
+				touched[count++] = c;
+			}
+			neighWeight[c] += weights[a];
+		}
+		// Retira i da comunidade atual antes de comparar os ganhos
+		tot.addAndGet(current, -k[i]);
+		int best = current;
+		double bestGain = neighWeight[current] - (double) tot.get(current)
+				* k[i] / m2;
+		for (int t = 1; t < count; t++) {
+			int c = touched[t];
+			double gain = neighWeight[c] - (double) tot.get(c) * k[i] / m2;
+			if (gain > bestGain) {
+				bestGain = gain;
+				best = c;
+			}
+		}
+		tot.addAndGet(best, k[i]);
+		comm[i] = best;
+		for (int t = 0; t < count; t++)
+			neighWeight[touched[t]] = -1;
+		return best != current;
+	}
+
+	/**
+	 * Modularidade Q = soma_c [in(c) / 2m - (tot(c) / 2m)^2].
+	 * 
+	 * Custo: Theta(V+E)
+	 */
+	private static double modularity(int[] offsets, int[] targets,
+			long[] weights, int[] comm, int communityCount) {
+		int n = offsets.length - 1;
+		double[] tot = new double[communityCount];
+		double in = 0, m2 = 0;
+		for (int i = 0; i < n; i++) {
+			for (int a = offsets[i]; a < offsets[i + 1]; a++) {
+				m2 += weights[a];
+				tot[comm[i]] += weights[a];
+				if (comm[targets[a]] == comm[i])
+					in += weights[a];
+			}
+		}
+		if (m2 == 0)
+			return 0;
+		double q = in / m2;
+		for (int c = 0; c < communityCount; c++)
+			q -= (tot[c] / m2) * (tot[c] / m2);
+		return q;
+	}
+
+	/**
+	 * Fase de agregacao: cada comunidade vira um vertice e os pesos das
+	 * arestas entre comunidades sao somados.
+	 * 
+	 * Custo: Theta(V+E)
+	 * 
+	 * @return {offsets, targets, weights} do grafo agregado.
+	 */
+	private static Tuple3<int[], int[], long[]> aggregate(int[] offsets, int[] targets,
+			long[] weights, int[] comm, int k) {
+		int n = offsets.length - 1;
+		// Vertices agrupados por comunidade (ordenacao por contagem)
+		int[] start = new int[k + 1];
+		for (int i = 0; i < n; i++)
+			start[comm[i] + 1]++;
+		for (int c = 0; c < k; c++)
+			start[c + 1] += start[c];
+		int[] members = new int[n];
+		int[] pos = Arrays.copyOf(start, k);
+		for (int i = 0; i < n; i++)
+			members[pos[comm[i]]++] = i;
+
+		int[] newOffsets = new int[k + 1];
+		int[] newTargets = new int[Math.min(targets.length, 16)];
+		long[] newWeights = new long[newTargets.length];
+		long[] acc = new long[k];
+		Arrays.fill(acc, -1);
+		int[] touched = new int[k];
+		int size = 0;
+		for (int c = 0; c < k; c++) {
+			int count = 0;
+			for (int m = start[c]; m < start[c + 1]; m++) {
+				int i = members[m];
+				for (int a = offsets[i]; a < offsets[i + 1]; a++) {
+					int d = comm[targets[a]];
+					if (acc[d] < 0) {
+						acc[d] = 0;
+						touched[count++] = d;
+					}
+					acc[d] += weights[a];
+				}
+			}
+			if (size + count > newTargets.length) {
+				int capacity = Math.max(size + count, newTargets.length * 2);
+				newTargets = Arrays.copyOf(newTargets, capacity);
+				newWeights = Arrays.copyOf(newWeights, capacity);
+			}
+			for (int t = 0; t < count; t++) {
+				int d = touched[t];
+				newTargets[size] = d;
+				newWeights[size++] = acc[d];
+				acc[d] = -1;
+			}
+			newOffsets[c + 1] = size;
+		}
+		return new Tuple3<int[], int[], long[]>(newOffsets, Arrays.copyOf(
+				newTargets, size), Arrays.copyOf(newWeights, size));
+	}
+
+	private void runWorkers(ExecutorService pool, Runnable worker) {
+		if (pool == null) {
+			worker.run();
+			return;
+		}
+		try {
+			List<Future<?>> futures = new ArrayList<Future<?>>(threads);
+			for (int i = 0; i < threads; i++)
+				futures.add(pool.submit(worker));
+			for (int i = 0; i < futures.size(); i++)
+				futures.get(i).get();
+		} catch (Exception ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+
+	/**
+	 * Calcula e salva as metricas de cada comunidade, uma por linha, no
+	 * formato "comunidade vertices arestasInternas arestasDeCorte volume
+	 * grauMedio condutancia coefAgrupamento". Como em {@link ADC}, a
+	 * condutancia e' a razao entre as arestas de corte e as internas, e o
+	 * coeficiente de agrupamento considera o subgrafo induzido pela
+	 * comunidade. A primeira linha traz a modularidade e o numero de
+	 * comunidades.
+	 * 
+	 * Custo: Theta(V+E) (ver {@link PartitionQuality}) mais uma unica
+	 * contagem de triangulos para todas as comunidades.
+	 * 
+	 * @param fileName
+	 *            Nome do arquivo.
+	 */
+	public void saveMetrics(String fileName) {
+		int k = communityCount;
+		PartitionQuality quality = new PartitionQuality(graph, labels, k,
+				threads);
+		double[] clust = new TriangleCounter(graph, labels, threads)
+				.clustCoeficientByLabel(k);
+		PrintWriter writer = null;
+		try {
+			try {
+				writer = new PrintWriter(fileName, "UTF-8");
+				writer.println(String.format("%.4f", modularity) + " " + k);
+				for (int c = 0; c < k; c++) {
+					int size = quality.getSize(c);
+					long volume = quality.getVolume(c);
+					writer.println(c + " " + size + " "
+							+ quality.getInternalEdges(c) + " "
+							+ quality.getBoundaryEdges(c) + " " + volume + " "
+							+ String.format("%.2f", (float) volume / size) + " "
+							+ String.format("%.2f", quality.getConductance(c))
+							+ " " + String.format("%.2f", clust[c]));
+				}
+			} catch (Exception ex) {
+				ex.printStackTrace();
+			}
+		} finally {
+			if (writer != null)
+				writer.close();
+		}
+	}
+
+	/**
+	 * Salva a comunidade de cada vertice, um vertice por linha no formato
+	 * "vertice comunidade".
+	 * 
+	 * @param fileName
+	 *            Nome do arquivo.
+	 */
+	public void saveToFile(String fileName) {
+		PrintWriter writer = null;
+		try {
+			try {
+				writer = new PrintWriter(fileName, "UTF-8");
+				for (int u = 0; u < labels.length; u++)
+					writer.println(u + " " + labels[u]);
+			} catch (Exception ex) {
+				ex.printStackTrace();
+			}
+		} finally {
+			if (writer != null)
+				writer.close();
+		}
+	}
+}
@@ -1,74 +1,402 @@
 package br.ufmg.dcc.paa.tp2;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import br.ufmg.dcc.paa.tp2.util.GraphReader;
+import br.ufmg.dcc.paa.tp2.util.Profile;
+import br.ufmg.dcc.paa.tp2.util.Tuple2;
 
 /**
  * Classe com metodo main para execucacao do TP2.
  * 
+ * O processamento e' feito em estagios: os arquivos de entrada sao lidos em
+ * sequencia por uma thread propria, cada grafo e' processado assim que estiver
+ * lido (ate' -simultaneos grafos ao mesmo tempo) e os arquivos de saida sao
+ * gravados em segundo plano. O tempo total tende ao do estagio mais lento, e
+ * nao a' soma de todos.
+ * 
  * @author Wilson de Carvalho
  */
 public class Main {
 
+	// Numero de tentativas independentes do ADC por grafo
+	static int trials = 1;
+	// Semente aleatoria da primeira tentativa
+	static long seed = new Random().nextLong();
+	// Criterio de escolha da melhor tentativa
+	static ADC.Criterion criterion = ADC.Criterion.CN;
+	// Threads usadas na leitura dos grafos; 1 para leitura sequencial
+	static int readThreads = 1;
+	// Distancia maxima das sementes para os candidatos; negativo sem limite
+	static int maxHops = -1;
+	// Estrategia de expansao da regiao honesta
+	static ADC.Engine engine = ADC.Engine.GREEDY;
+	// Se verdadeiro, tambem detecta as comunidades com o Louvain
+	static boolean communities = false;
+	// Numero maximo de grafos processados ao mesmo tempo
+	private static int parallelGraphs = 2;
+	// Cache dos resultados do ADC em disco; nulo se desativado
+	static ResultCache resultCache = null;
+	// Se verdadeiro, grava os tempos e contadores de cada fase do ADC
+	static boolean profiling = false;
+
 	public static void main(String[] args) {
-		if (args.length != 4) {
+		if (args.length < 4 || !parseOptions(args)) {
 			System.out
 					.println("Sao necessarios 4 arquivos de entrada na seguinte ordem:");
 			System.out.println("\tArquivo 1 - Grafo A");
 			System.out.println("\tArquivo 2 - Grafo B");
 			System.out.println("\tArquivo 3 - Vertices sybil para grafo A");
 			System.out.println("\tArquivo 4 - Vertices sybil para grafo B");
+			System.out.println("Opcoes (apos os arquivos):");
+			System.out
+					.println("\t-tentativas=N - Executa N tentativas do ADC em paralelo e mantem a melhor");
+			System.out
+					.println("\t-semente=S - Semente aleatoria da primeira tentativa");
+			System.out
+					.println("\t-criterio=cn|modularidade - Criterio de escolha da melhor tentativa");
+			System.out
+					.println("\t-leitura=paralela - Le os grafos usando todos os processadores");
+			System.out
+					.println("\t-saltos=N - Considera apenas vertices a ate' N arestas das sementes");
+			System.out
+					.println("\t-motor=guloso|sybilrank|heap - Estrategia de expansao da regiao honesta");
+			System.out
+					.println("\t-comunidades - Detecta tambem as comunidades (Louvain) de cada grafo");
+			System.out
+					.println("\t-simultaneos=N - Processa ate' N grafos ao mesmo tempo (padrao: 2)");
+			System.out
+					.println("\t-cache=diretorio - Reaproveita resultados anteriores gravados no diretorio");
+			System.out
+					.println("\t-limiteCache=MB - Tamanho maximo do cache de resultados (padrao: 256)");
+			System.out
+					.println("\t-perfil - Grava tempos e contadores de cada fase em 'profileG<grafo>.txt'");
 			return;
 		}
-		ArrayList<ArrayList<Integer>> graphA = readGraph(args[0], "A");
-		ArrayList<ArrayList<Integer>> graphB = readGraph(args[1], "B");
-		int[] sybilA = readSybil(args[2], "sybil A");
-		int[] sybilB = readSybil(args[3], "sybil B");
-		if (graphA == null || graphB == null || sybilA == null
-				|| sybilB == null) {
-			return;
-		} else {
-			long start = System.currentTimeMillis();
-			System.out.println("Iniciando processamento do grafo A");
-			new ADC().execute(graphA, sybilA, "A");
-			endProcessing(start, "A");
-			start = System.currentTimeMillis();
-			System.out.println("Iniciando processamento do grafo B");
-			new ADC().execute(graphB, sybilB, "B");
-			endProcessing(start, "B");
+		long start = System.currentTimeMillis();
+		// Leituras em sequencia numa unica thread: o grafo B e' lido enquanto
+		// o A ja' esta' sendo processado
+		ExecutorService loader = Executors.newSingleThreadExecutor();
+		ExecutorService workers = Executors.newFixedThreadPool(parallelGraphs);
+		// Gravacoes em ordem numa unica thread, fora do caminho critico
+		ExecutorService writer = Executors.newSingleThreadExecutor();
+		try {
+			Future<CsrGraph> graphA = loader.submit(graphLoader(args[0], "A"));
+			Future<int[]> sybilA = loader.submit(sybilLoader(args[2],
+					"sybil A"));
+			Future<CsrGraph> graphB = loader.submit(graphLoader(args[1], "B"));
+			Future<int[]> sybilB = loader.submit(sybilLoader(args[3],
+					"sybil B"));
+			List<Future<Void>> jobs = new ArrayList<Future<Void>>(2);
+			jobs.add(workers.submit(graphJob(graphA, sybilA, "A", writer)));
+			jobs.add(workers.submit(graphJob(graphB, sybilB, "B", writer)));
+			for (int i = 0; i < jobs.size(); i++) {
+				try {
+					jobs.get(i).get();
+				} catch (ExecutionException ex) {
+					ex.getCause().printStackTrace();
+				}
+			}
+		} catch (InterruptedException ex) {
+			ex.printStackTrace();
+		} finally {
+			loader.shutdown();
+			workers.shutdown();
+			writer.shutdown();
+			try {
+				writer.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException ex) {
+				ex.printStackTrace();
+			}
+		}
+		printElapsed(System.out, "", start);
+	}
+
+	/**
+	 * Saida que mostra cada linha assim que ela termina, precedida do nome do
+	 * grafo. As linhas sao escritas inteiras e sob o bloqueio do destino, de
+	 * modo que as mensagens de grafos processados ao mesmo tempo se alternam
+	 * por linha, sem se misturar.
+	 */
+	private static class PrefixedOutput extends OutputStream {
+		private final PrintStream target;
+		private final String prefix;
+		private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+		PrefixedOutput(PrintStream target, String prefix) {
+			this.target = target;
+			this.prefix = prefix;
+		}
+
+		@Override
+		public synchronized void write(int b) {
+			line.write(b);
+			if (b == '\n')
+				this.writeLine();
+		}
+
+		@Override
+		public synchronized void write(byte[] b, int off, int len) {
+			for (int i = off; i < off + len; i++)
+				this.write(b[i]);
+		}
+
+		/**
+		 * Mostra a linha incompleta, se houver, terminando-a.
+		 */
+		@Override
+		public synchronized void flush() {
+			if (line.size() > 0) {
+				line.write('\n');
+				this.writeLine();
+			}
+		}
+
+		private void writeLine() {
+			synchronized (target) {
+				target.print(prefix);
+				target.print(line.toString());
+				target.flush();
+			}
+			line.reset();
 		}
 	}
 
-	private static void endProcessing(long startMillis, String graphName) {
-		System.out
-				.println("O resultado do processamento encontra-se nos arquivos 'metricsG"
-						+ graphName
-						+ ".txt', 'regionHonestG"
-						+ graphName
-						+ ".txt' e 'regionSybilG" + graphName + ".txt'.");
+	/**
+	 * Tarefa que processa um grafo assim que ele e os seus vertices sybil
+	 * estiverem lidos. Cada mensagem de progresso e' mostrada assim que
+	 * termina, precedida do nome do grafo; se o processamento falhar, a linha
+	 * incompleta tambem e' mostrada.
+	 */
+	private static Callable<Void> graphJob(final Future<CsrGraph> graph,
+			final Future<int[]> sybil, final String graphName,
+			final Executor writer) {
+		return new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				PrintStream out = new PrintStream(new PrefixedOutput(
+						System.out, "[" + graphName + "] "));
+				try {
+					process(out);
+				} finally {
+					out.flush();
+				}
+				return null;
+			}
+
+			private void process(PrintStream out) throws Exception {
+				if (graph.get() == null || sybil.get() == null) {
+					out.println("Grafo " + graphName + " nao processado.");
+				} else {
+					long start = System.currentTimeMillis();
+					out.println("Iniciando processamento do grafo " + graphName);
+					ADC adc = new ADC();
+					adc.setMaxHops(maxHops);
+					adc.setEngine(engine);
+					adc.setThreads(threadsPerJob(Math.min(parallelGraphs, 2)));
+					adc.setOutput(out);
+					adc.setWriter(writer);
+					adc.setResultCache(resultCache);
+					if (profiling)
+						adc.setProfile(new Profile());
+					int[] validSybil = new GraphReader().validateSybil(
+							sybil.get(), graph.get().getVertexCount(), out);
+					adc.execute(graph.get(), validSybil, graphName, trials,
+							seed, criterion);
+					if (communities)
+						detectCommunities(graph.get(), graphName, out, writer);
+					endProcessing(out, start, graphName);
+				}
+			}
+		};
+	}
+
+	private static Callable<CsrGraph> graphLoader(final String fileName,
+			final String graphName) {
+		return new Callable<CsrGraph>() {
+			@Override
+			public CsrGraph call() {
+				return readGraph(fileName, graphName);
+			}
+		};
+	}
+
+	private static Callable<int[]> sybilLoader(final String fileName,
+			final String sybilName) {
+		return new Callable<int[]>() {
+			@Override
+			public int[] call() {
+				return readSybil(fileName, sybilName);
+			}
+		};
+	}
+
+	/**
+	 * Le as opcoes informadas apos os 4 arquivos de entrada.
+	 * 
+	 * @return Falso se alguma opcao for invalida.
+	 */
+	private static boolean parseOptions(String[] args) {
+		return parseOptions(args, 4);
+	}
+
+	/**
+	 * Le as opcoes comuns a {@link Main} e {@link BatchMain}.
+	 * 
+	 * @param first
+	 *            Posicao da primeira opcao em args.
+	 * @return Falso se alguma opcao for invalida.
+	 */
+	static boolean parseOptions(String[] args, int first) {
+		String cacheDir = null;
+		long cacheLimit = 256;
+		for (int i = first; i < args.length; i++) {
+			String arg = args[i];
+			try {
+				if (arg.startsWith("-tentativas=")) {
+					trials = Integer.parseInt(arg.substring(12));
+				} else if (arg.startsWith("-semente=")) {
+					seed = Long.parseLong(arg.substring(9));
+				} else if (arg.equals("-criterio=cn")) {
+					criterion = ADC.Criterion.CN;
+				} else if (arg.equals("-criterio=modularidade")) {
+					criterion = ADC.Criterion.MODULARITY;
+				} else if (arg.equals("-leitura=paralela")) {
+					readThreads = Runtime.getRuntime().availableProcessors();
+				} else if (arg.startsWith("-saltos=")) {
+					maxHops = Integer.parseInt(arg.substring(8));
+				} else if (arg.equals("-motor=guloso")) {
+					engine = ADC.Engine.GREEDY;
+				} else if (arg.equals("-motor=sybilrank")) {
+					engine = ADC.Engine.SYBIL_RANK;
+				} else if (arg.equals("-motor=heap")) {
+					engine = ADC.Engine.GAIN_HEAP;
+				} else if (arg.equals("-comunidades")) {
+					communities = true;
+				} else if (arg.equals("-perfil")) {
+					profiling = true;
+				} else if (arg.startsWith("-cache=")) {
+					cacheDir = arg.substring(7);
+				} else if (arg.startsWith("-limiteCache=")) {
+					cacheLimit = Long.parseLong(arg.substring(13));
+				} else if (arg.startsWith("-simultaneos=")) {
+					parallelGraphs = Integer.parseInt(arg.substring(13));
+					if (parallelGraphs < 1) {
+						System.out.println("Opcao invalida: " + arg);
+						return false;
+					}
+				} else {
+					System.out.println("Opcao invalida: " + arg);
+					return false;
+				}
+			} catch (NumberFormatException ex) {
+				System.out.println("Opcao invalida: " + arg);
+				return false;
+			}
+		}
+		if (cacheDir != null)
+			resultCache = new ResultCache(cacheDir, cacheLimit * 1024 * 1024);
+		return true;
+	}
+
+	/**
+	 * Detecta as comunidades do grafo com o {@link Louvain} e salva os
+	 * rotulos em 'communitiesG<nome>.txt' e as metricas de cada comunidade em
+	 * 'metricsCommunitiesG<nome>.txt'.
+	 */
+	private static void detectCommunities(CsrGraph graph,
+			final String graphName, PrintStream out, Executor writer) {
+		out.println("\tDetectando comunidades (Louvain)...");
+		long start = System.currentTimeMillis();
+		final Louvain louvain = new Louvain(graph, threadsPerJob(Math.min(
+				parallelGraphs, 2)));
+		louvain.detect();
+		out.println("\t\t" + louvain.getCommunityCount() + " comunidades em "
+				+ louvain.getLevels() + " niveis, modularidade = "
+				+ String.format("%.4f", louvain.getModularity()));
+		writer.execute(new Runnable() {
+			@Override
+			public void run() {
+				louvain.saveToFile("communitiesG" + graphName + ".txt");
+				louvain.saveMetrics("metricsCommunitiesG" + graphName
+						+ ".txt");
+			}
+		});
+		out.println("\t\tFinalizado em " + (System.currentTimeMillis() - start)
+				+ " ms.");
+	}
+
+	private static void endProcessing(PrintStream out, long startMillis,
+			String graphName) {
+		out.println("O resultado do processamento encontra-se nos arquivos 'metricsG"
+				+ graphName
+				+ ".txt', 'regionHonestG"
+				+ graphName
+				+ ".txt' e 'regionSybilG" + graphName + ".txt'.");
+		printElapsed(out, "\t", startMillis);
+	}
+
+	private static void printElapsed(PrintStream out, String indent,
+			long startMillis) {
 		long current = System.currentTimeMillis();
 		double total = current - startMillis;
 		if (total > 1000) {
 			double totalSec = (total / 1000);
-			System.out
-					.println("\tTempo total de execucao: " + totalSec + " s.");
+			out.println(indent + "Tempo total de execucao: " + totalSec + " s.");
 		} else {
-			System.out.println("\tTempo total de execucao: " + total + " ms.");
+			out.println(indent + "Tempo total de execucao: " + total + " ms.");
 		}
 	}
 
-	private static ArrayList<ArrayList<Integer>> readGraph(String fileName,
-			String graphName) {
+	/**
+	 * @return Threads de cada tarefa quando jobs tarefas dividem os
+	 *         processadores, pelo menos 1.
+	 */
+	static int threadsPerJob(int jobs) {
+		return Math.max(1, Runtime.getRuntime().availableProcessors() / jobs);
+	}
+
+	static CsrGraph readGraph(String fileName, String graphName) {
 		System.out.println("Fazendo leitura do grafo " + graphName + "...");
+		if (GraphSnapshot.isSnapshot(fileName)) {
+			try {
+				return GraphSnapshot.read(fileName);
+			} catch (IOException ex) {
+				System.out.println(ex.getMessage());
+				System.out.println("Erro ao fazer a leitura do grafo.");
+				return null;
+			}
+		}
 		GraphReader gr = new GraphReader();
-		ArrayList<ArrayList<Integer>> ret = gr.readGraph(fileName);
-		if (ret == null)
+		Tuple2<int[], int[]> csr = (readThreads > 1) ? gr.readGraphParallel(
+				fileName, readThreads) : gr.readGraphMapped(fileName);
+		if (csr == null) {
 			System.out.println("Erro ao fazer a leitura do grafo.");
-		return ret;
+			return null;
+		}
+		try {
+			return new CsrGraph(csr._1, csr._2);
+		} catch (IllegalArgumentException ex) {
+			System.out.println(ex.getMessage());
+			System.out.println("Erro ao fazer a leitura do grafo.");
+			return null;
+		}
 	}
 
-	private static int[] readSybil(String fileName, String sybilName) {
+	static int[] readSybil(String fileName, String sybilName) {
 		System.out.println("Fazendo leitura dos vertices sybil " + sybilName
 				+ "...");
 		GraphReader gr = new GraphReader();
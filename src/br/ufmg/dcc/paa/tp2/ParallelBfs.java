@@ -0,0 +1,303 @@
+package br.ufmg.dcc.paa.tp2;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import br.ufmg.dcc.paa.tp2.util.IntList;
+
+/**
+ * Busca em largura paralela, sincronizada por nivel, a partir de varias
+ * origens, com alternancia entre os passos top-down e bottom-up (Beamer et
+ * al., "Direction-Optimizing Breadth-First Search").
+ * 
+ * No passo top-down, os vertices da fronteira (uma fila) examinam seus
+ * vizinhos e disputam cada vertice novo com uma operacao atomica no mapa de
+ * bits de visitados. No passo bottom-up, cada vertice ainda nao visitado
+ * procura algum vizinho no mapa de bits da fronteira e para no primeiro
+ * encontrado; os vertices sao divididos em blocos multiplos de 64, de modo
+ * que cada thread escreve apenas nas suas palavras do mapa de bits. O passo
+ * bottom-up e' usado enquanto a fronteira tem muitas arestas em relacao as
+ * arestas ainda nao exploradas, o que costuma acontecer nos niveis centrais de
+ * grafos sociais.
+ * 
+ * Custo: O(V+E) no pior caso, tipicamente bem menos arestas examinadas que a
+ * busca top-down.
+ * 
+ * @author Wilson de Carvalho
+ */
+public class ParallelBfs {
+	// Troca para bottom-up quando as arestas da fronteira passam de 1/ALPHA
+	// das arestas nao exploradas
+	private static final int ALPHA = 14;
+	// Volta para top-down quando a fronteira tem menos de V/BETA vertices
+	private static final int BETA = 24;
+	// Vertices (ou posicoes da fila) por bloco de trabalho; multiplo de 64
+	private static final int CHUNK = 4096;
+
+	private final CsrGraph graph;
+	private final int threads;
+
+	/**
+	 * @param graph
+	 *            Grafo.
+	 */
+	public ParallelBfs(CsrGraph graph) {
+		this(graph, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param graph
+	 *            Grafo.
+	 * @param threads
+	 *            Numero de threads.
+	 */
+	public ParallelBfs(CsrGraph graph, int threads) {
+		this.graph = graph;
+		this.threads = threads;
+	}
+
+	/**
+	 * Calcula a distancia, em arestas, de cada vertice a' origem mais
+	 * proxima.
+	 * 
+	 * @param sources
+	 *            Vertices de origem.
+	 * @return Vetor de distancias, com -1 para os vertices nao alcancados.
+	 */
+	public int[] distances(int[] sources) {
+		return this.distances(sources, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Calcula a distancia, em arestas, de cada vertice a' origem mais
+	 * proxima, explorando no maximo maxDepth niveis.
+	 * 
+	 * @param sources
+	 *            Vertices de origem. Identificadores invalidos sao ignorados.
+	 * @param maxDepth
+	 *            Distancia maxima explorada.
+	 * @return Vetor de distancias, com -1 para os vertices nao alcancados ou
+	 *         alem de maxDepth.
+	 */
+	public int[] distances(int[] sources, int maxDepth) {
+		final int n = graph.getVertexCount();
+		final int[] dist = new int[n];
+		Arrays.fill(dist, -1);
+		final AtomicLongArray visited = new AtomicLongArray(words(n));
+		IntList frontier = new IntList();
+		long frontierEdges = 0;
+		for (int i = 0; i < sources.length; i++) {
+			int s = sources[i];
+			if (s < 0 || s >= n || dist[s] == 0)
+				continue;
+			dist[s] = 0;
+			setBit(visited, s);
+			frontier.add(s);
+			frontierEdges += graph.degree(s);
+		}
+		ExecutorService pool = (threads > 1) ? Executors
+				.newFixedThreadPool(threads) : null;
+		try {
+			// Arestas (nos dois sentidos) ainda nao exploradas
+			long unexplored = 2 * graph.getEdgeCount() - frontierEdges;
+			boolean bottomUp = false;
+			long[] frontierBits = null;
+			int frontierSize = frontier.size();
+			int level = 0;
+			while (frontierSize > 0 && level < maxDepth) {
+				if (!bottomUp && frontierEdges > unexplored / ALPHA) {
+					bottomUp = true;
+					frontierBits = toBits(frontier, n);
+				} else if (bottomUp && frontierSize < n / BETA) {
+					bottomUp = false;
+					frontier = toQueue(frontierBits);
+				}
+				long[] step;
+				if (bottomUp) {
+					long[] next = new long[words(n)];
+					step = this.bottomUp(pool, frontierBits, next, dist,
+							visited, level + 1);
+					frontierBits = next;
+				} else {
+					frontier = this.topDown(pool, frontier, dist, visited,
+							level + 1);
+					step = new long[] { frontier.size(), 0 };
+					for (int i = 0; i < frontier.size(); i++)
+						step[1] += graph.degree(frontier.get(i));
+				}
+				frontierSize = (int) step[0];
+				frontierEdges = step[1];
+				unexplored -= frontierEdges;
+				level++;
+			}
+		} finally {
+			if (pool != null)
+				pool.shutdown();
+		}
+		return dist;
+	}
+
+	/**
+	 * Passo top-down: os vizinhos nao visitados da fronteira formam a proxima
+	 * fronteira.
+	 */
+	private IntList topDown(ExecutorService pool, final IntList frontier,
+			final int[] dist, final AtomicLongArray visited, final int level) {
+		final AtomicInteger nextChunk = new AtomicInteger(0);
+		List<IntList> parts = this.runWorkers(pool, new Callable<IntList>() {
+			@Override
+			public IntList call() {
+				IntList local = new IntList();
+				int start;
+				while ((start = nextChunk.getAndAdd(CHUNK)) < frontier.size()) {
+					int end = Math.min(start + CHUNK, frontier.size());
+					for (int k = start; k < end; k++) {
+						int u = frontier.get(k);
+						for (int i = graph.begin(u); i < graph.end(u); i++) {
+							int v = graph.target(i);
+							// Apenas a thread que liga o bit escreve dist[v]
+							if (!testBit(visited, v) && setBit(visited, v)) {
+								dist[v] = level;
+								local.add(v);
+							}
+						}
+					}
+				}
+				return local;
+			}
+		});
+		if (parts.size() == 1)
+			return parts.get(0);
+		int size = 0;
+		for (int i = 0; i < parts.size(); i++)
+			size += parts.get(i).size();
+		IntList next = new IntList(size);
+		for (int i = 0; i < parts.size(); i++) {
+			IntList part = parts.get(i);
+			for (int j = 0; j < part.size(); j++)
+				next.add(part.get(j));
+		}
+		return next;
+	}
+
+	/**
+	 * Passo bottom-up: cada vertice nao visitado com algum vizinho na
+	 * fronteira entra na proxima fronteira.
+	 * 
+	 * @return {tamanho da proxima fronteira, soma dos graus}.
+	 */
+	private long[] bottomUp(ExecutorService pool, final long[] frontierBits,
+			final long[] nextBits, final int[] dist,
+			final AtomicLongArray visited, final int level) {
+		final int n = graph.getVertexCount();
+		final AtomicInteger nextChunk = new AtomicInteger(0);
+		List<long[]> parts = this.runWorkers(pool, new Callable<long[]>() {
+			@Override
+			public long[] call() {
+				long count = 0, edges = 0;
+				int start;
+				while ((start = nextChunk.getAndAdd(CHUNK)) < n) {
+					int end = Math.min(start + CHUNK, n);
+					for (int v = start; v < end; v++) {
+						if (dist[v] != -1)
+							continue;
+						for (int i = graph.begin(v); i < graph.end(v); i++) {
+							int u = graph.target(i);
+							if ((frontierBits[u >>> 6] & (1L << u)) != 0) {
+								dist[v] = level;
+								// O bloco e' exclusivo desta thread
+								nextBits[v >>> 6] |= 1L << v;
+								setBit(visited, v);
+								count++;
+								edges += graph.degree(v);
+								break;
+							}
+						}
+					}
+				}
+				return new long[] { count, edges };
+			}
+		});
+		long[] ret = new long[2];
+		for (int i = 0; i < parts.size(); i++) {
+			ret[0] += parts.get(i)[0];
+			ret[1] += parts.get(i)[1];
+		}
+		return ret;
+	}
+
+	/**
+	 * Executa o mesmo trabalho em todas as threads do pool, ou uma unica vez
+	 * na thread atual se nao houver pool.
+	 */
+	private <T> List<T> runWorkers(ExecutorService pool, Callable<T> worker) {
+		List<T> ret = new ArrayList<T>(threads);
+		try {
+			if (pool == null) {
+				ret.add(worker.call());
+				return ret;
+			}
+			List<Future<T>> futures = new ArrayList<Future<T>>(threads);
+			for (int i = 0; i < threads; i++)
+				futures.add(pool.submit(worker));
+			for (int i = 0; i < futures.size(); i++)
+				ret.add(futures.get(i).get());
+		} catch (Exception ex) {
+			throw new RuntimeException(ex);
+		}
+		return ret;
+	}
+
+	private static int words(int n) {
+		return (n + 63) >>> 6;
+	}
+
+	private static boolean testBit(AtomicLongArray bits, int v) {
+		return (bits.get(v >>> 6) & (1L << v)) != 0;
+	}
+
+	/**
+	 * Liga o bit de v atomicamente.
+	 * 
+	 * @return Falso se o bit ja' estava ligado.
+	 */
+	private static boolean setBit(AtomicLongArray bits, int v) {
+		int w = v >>> 6;
+		long mask = 1L << v;
+		while (true) {
+			long old = bits.get(w);
+			if ((old & mask) != 0)
+				return false;
+			if (bits.compareAndSet(w, old, old | mask))
+				return true;
+		}
+	}
+
+	private static long[] toBits(IntList queue, int n) {
+		long[] bits = new long[words(n)];
+		for (int i = 0; i < queue.size(); i++) {
+			int v = queue.get(i);
+			bits[v >>> 6] |= 1L << v;
+		}
+		return bits;
+	}
+
+	private static IntList toQueue(long[] bits) {
+		IntList queue = new IntList();
+		for (int w = 0; w < bits.length; w++) {
+			long word = bits[w];
+			while (word != 0) {
+				queue.add((w << 6) + Long.numberOfTrailingZeros(word));
+				word &= word - 1;
+			}
+		}
+		return queue;
+	}
+}
@@ -0,0 +1,185 @@
+package br.ufmg.dcc.paa.tp2;
+
+import java.io.PrintWriter;
+import java.util.BitSet;
+
+import br.ufmg.dcc.paa.tp2.util.Tuple2;
+
+/**
+ * Particao dos vertices de um grafo em duas regioes, A e B = V - A, sobre um
+ * unico {@link CsrGraph} compartilhado e imutavel.
+ * 
+ * A pertinencia a A e' mantida num {@link BitSet} e, para cada vertice, o
+ * numero de vizinhos em A. Com isso, mover um vertice entre as regioes custa
+ * uma troca de bit e O(Adj(u)) atualizacoes de contadores, sem alocacao, e os
+ * numeros de arestas eAA, eBB e eAB ficam sempre disponiveis em O(1).
+ * 
+ * @author Wilson de Carvalho
+ */
+public class Partition {
+	private final CsrGraph graph;
+	private final BitSet inA;
+	// Numero de vizinhos de cada vertice que estao em A (lacos nao contam)
+	private final int[] neighborsInA;
+	private int sizeA = 0;
+	private long eAA = 0;
+	private long eBB;
+	private long eAB = 0;
+
+	/**
+	 * Cria uma particao com todos os vertices na regiao B. Custo: Theta(V)
+	 * 
+	 * @param graph
+	 *            Grafo particionado.
+	 */
+	public Partition(CsrGraph graph) {
+		this.graph = graph;
+		this.inA = new BitSet(graph.getVertexCount());
+		this.neighborsInA = new int[graph.getVertexCount()];
+		this.eBB = graph.getEdgeCount();
+	}
+
+	public CsrGraph getGraph() {
+		return graph;
+	}
+
+	/**
+	 * Verifica se o vertice u esta' na regiao A. Custo: O(1)
+	 */
+	public boolean inA(int u) {
+		return inA.get(u);
+	}
+
+	public int getSizeA() {
+		return sizeA;
+	}
+
+	public int getSizeB() {
+		return graph.getVertexCount() - sizeA;
+	}
+
+	/**
+	 * @return Numero de arestas com as duas extremidades em A.
+	 */
+	public long getEAA() {
+		return eAA;
+	}
+
+	/**
+	 * @return Numero de arestas com as duas extremidades em B.
+	 */
+	public long getEBB() {
+		return eBB;
+	}
+
+	/**
+	 * @return Numero de arestas entre A e B.
+	 */
+	public long getEAB() {
+		return eAB;
+	}
+
+	/**
+	 * Numero de vizinhos de u que estao em A, sem contar o proprio u.
+	 */
+	public int getNeighborsInA(int u) {
+		return neighborsInA[u];
+	}
+
+	/**
+	 * Move o vertice u da regiao B para a regiao A. Nao faz nada se u ja'
+	 * estiver em A.
+	 * 
+	 * Custo: Theta(Adj(u))
+	 * 
+	 * @param u
+	 *            Vertice a ser movido.
+	 */
+	public void moveToA(int u) {
+		if (inA.get(u))
+			return;
+		int loop = graph.hasEdge(u, u) ? 1 : 0;
+		int a = neighborsInA[u];
+		int b = graph.degree(u) - loop - a;
+		// Arestas para A deixam de ser de corte; arestas para B passam a ser
+		eAA += a + loop;
+		eAB += b - a;
+		eBB -= b + loop;
+		this.updateNeighbors(u, 1);
+		inA.set(u);
+		sizeA++;
+	}
+
+	/**
+	 * Move o vertice u da regiao A para a regiao B, desfazendo
+	 * {@link #moveToA(int)}. Nao faz nada se u ja' estiver em B.
+	 * 
+	 * Custo: Theta(Adj(u))
+	 * 
+	 * @param u
+	 *            Vertice a ser movido.
+	 */
+	public void moveToB(int u) {
+		if (!inA.get(u))
+			return;
+		int loop = graph.hasEdge(u, u) ? 1 : 0;
+		int a = neighborsInA[u];
+		int b = graph.degree(u) - loop - a;
+		eAA -= a + loop;
+		eAB -= b - a;
+		eBB += b + loop;
+		this.updateNeighbors(u, -1);
+		inA.clear(u);
+		sizeA--;
+	}
+
+	private void updateNeighbors(int u, int delta) {
+		for (int i = graph.begin(u); i < graph.end(u); i++) {
+			int v = graph.target(i);
+			if (v != u)
+				neighborsInA[v] += delta;
+		}
+	}
+
+	/**
+	 * Calcula o coeficiente de agrupamento das duas regioes com uma unica
+	 * contagem de triangulos, que ignora as arestas de corte.
+	 * 
+	 * Custo: O(E^{3/2}), com os triangulos contados em paralelo por
+	 * {@link TriangleCounter}
+	 * 
+	 * @param threads
+	 *            Numero de threads da contagem de triangulos.
+	 * @return Coeficientes de agrupamento medios das regioes A e B.
+	 */
+	public Tuple2<Float, Float> clustCoeficients(int threads) {
+		return new TriangleCounter(graph, inA, threads)
+				.clustCoeficientBySide();
+	}
+
+	/**
+	 * Salva os vertices de uma regiao em um arquivo, em ordem crescente.
+	 * 
+	 * @param fileName
+	 *            Nome do arquivo.
+	 * @param regionA
+	 *            Verdadeiro para a regiao A, falso para B.
+	 */
+	public void saveToFile(String fileName, boolean regionA) {
+		PrintWriter writer = null;
+		try {
+			try {
+				writer = new PrintWriter(fileName, "UTF-8");
+				for (int u = 0; u < graph.getVertexCount(); u++) {
+					if (inA.get(u) == regionA)
+						writer.println(u);
+				}
+			} catch (Exception ex) {
+				ex.printStackTrace();
+			}
+		} finally {
+			if (writer != null)
+				writer.close();
+		}
+	}
+}
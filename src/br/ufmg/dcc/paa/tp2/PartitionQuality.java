@@ -0,0 +1,277 @@
+package br.ufmg.dcc.paa.tp2;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Qualidade de uma particao do grafo em k comunidades, dada pela comunidade
+ * de cada vertice: numero de vertices, arestas internas, arestas de corte,
+ * volume e condutancia de cada comunidade, alem da modularidade total.
+ * 
+ * Todos os valores sao obtidos numa unica passada sobre as listas de
+ * adjacencias, feita em paralelo sobre blocos de vertices. Cada thread
+ * acumula em vetores proprios de tamanho k, somados ao final, de modo que
+ * avaliar k regioes custa O(V+E+k*threads), e nao O(k(V+E)).
+ * 
+ * Lacos contam como arestas internas e somam 2 ao volume da comunidade.
+ * 
+ * @author Wilson de Carvalho
+ */
+public class PartitionQuality {
+	// Vertices por bloco de trabalho
+	private static final int CHUNK = 4096;
+
+	private final CsrGraph graph;
+	private final int communityCount;
+	private final int[] size;
+	private final long[] internal;
+	private final long[] boundary;
+	private final long[] volume;
+	private final double modularity;
+
+	/**
+	 * @param graph
+	 *            Grafo.
+	 * @param labels
+	 *            Comunidade de cada vertice, de 0 a communityCount-1.
+	 * @param communityCount
+	 *            Numero de comunidades.
+	 */
+	public PartitionQuality(CsrGraph graph, int[] labels, int communityCount) {
+		this(graph, labels, communityCount, Runtime.getRuntime()
+				.availableProcessors());
+	}
+
+	/**
+	 * Custo: Theta(V+E) mais O(k) por thread.
+	 * 
+	 * @param graph
+	 *            Grafo.
+	 * @param labels
+	 *            Comunidade de cada vertice, de 0 a communityCount-1.
+	 * @param communityCount
+	 *            Numero de comunidades.
+	 * @param threads
+	 *            Numero de threads.
+	 * @throws IllegalArgumentException
+	 *             Se o numero de rotulos for diferente do numero de vertices.
+	 */
+	public PartitionQuality(CsrGraph graph, int[] labels, int communityCount,
+			int threads) {
+		if (labels.length != graph.getVertexCount())
+			throw new IllegalArgumentException("Foram fornecidos "
+					+ labels.length + " rotulos para "
+					+ graph.getVertexCount() + " vertices.");
+		this.graph = graph;
+		this.communityCount = communityCount;
+		this.size = new int[communityCount];
+		this.internal = new long[communityCount];
+		this.boundary = new long[communityCount];
+		this.volume = new long[communityCount];
+		this.accumulate(labels, Math.max(threads, 1));
+		this.modularity = modularity(internal, volume, graph.getEdgeCount());
+	}
+
+	public CsrGraph getGraph() {
+		return graph;
+	}
+
+	public int getCommunityCount() {
+		return communityCount;
+	}
+
+	/**
+	 * @return Numero de vertices da comunidade c.
+	 */
+	public int getSize(int c) {
+		return size[c];
+	}
+
+	/**
+	 * @return Numero de arestas com as duas extremidades na comunidade c.
+	 */
+	public long getInternalEdges(int c) {
+		return internal[c];
+	}
+
+	/**
+	 * @return Numero de arestas entre a comunidade c e as demais.
+	 */
+	public long getBoundaryEdges(int c) {
+		return boundary[c];
+	}
+
+	/**
+	 * @return Soma dos graus dos vertices da comunidade c.
+	 */
+	public long getVolume(int c) {
+		return volume[c];
+	}
+
+	/**
+	 * @return Condutancia da comunidade c, como em {@link ADC}.
+	 */
+	public float getConductance(int c) {
+		return conductance(internal[c], boundary[c]);
+	}
+
+	/**
+	 * @return Modularidade da particao.
+	 */
+	public double getModularity() {
+		return modularity;
+	}
+
+	/**
+	 * Percorre as listas de adjacencias uma unica vez, com os vetores de cada
+	 * thread somados ao final.
+	 */
+	private void accumulate(final int[] labels, int threads) {
+		final int n = graph.getVertexCount();
+		final int k = communityCount;
+		final AtomicInteger nextChunk = new AtomicInteger(0);
+		// Por thread: {vertices, extremidades internas, corte, volume}
+		final long[][][] parts = new long[threads][][];
+		final AtomicInteger workerId = new AtomicInteger(0);
+		Runnable worker = new Runnable() {
+			@Override
+			public void run() {
+				long[] sz = new long[k];
+				long[] in = new long[k];
+				long[] cut = new long[k];
+				long[] vol = new long[k];
+				int start;
+				while ((start = nextChunk.getAndAdd(CHUNK)) < n) {
+					int end = Math.min(start + CHUNK, n);
+					for (int u = start; u < end; u++) {
+						int c = labels[u];
+						sz[c]++;
+						for (int i = graph.begin(u); i < graph.end(u); i++) {
+							int v = graph.target(i);
+							// Arestas internas sao vistas uma vez de cada
+							// extremidade; lacos, uma unica vez
+							if (v == u) {
+								in[c] += 2;
+								vol[c] += 2;
+							} else {
+								vol[c]++;
+								if (labels[v] == c)
+									in[c]++;
+								else
+									cut[c]++;
+							}
+						}
+					}
+				}
+				parts[workerId.getAndIncrement()] = new long[][] { sz, in,
+						cut, vol };
+			}
+		};
+		if (threads == 1 || n <= CHUNK) {
+			worker.run();
+		} else {
+			ExecutorService pool = Executors.newFixedThreadPool(threads);
+			try {
+				List<Future<?>> futures = new ArrayList<Future<?>>(threads);
+				for (int i = 0; i < threads; i++)
+					futures.add(pool.submit(worker));
+				for (int i = 0; i < futures.size(); i++)
+					futures.get(i).get();
+			} catch (Exception ex) {
+				throw new RuntimeException(ex);
+			} finally {
+				pool.shutdown();
+			}
+		}
+		for (int t = 0; t < parts.length; t++) {
+			if (parts[t] == null)
+				continue;
+			for (int c = 0; c < k; c++) {
+				size[c] += (int) parts[t][0][c];
+				internal[c] += parts[t][1][c];
+				boundary[c] += parts[t][2][c];
+				volume[c] += parts[t][3][c];
+			}
+		}
+		for (int c = 0; c < k; c++)
+			internal[c] /= 2;
+	}
+
+	/**
+	 * Calcula a condutancia de uma regiao: razao entre as arestas de corte e
+	 * as arestas internas.
+	 * 
+	 * Custo: O(1)
+	 * 
+	 * @param eInside
+	 *            Numero de arestas internas da regiao.
+	 * @param eCut
+	 *            Numero de arestas de corte.
+	 * @return Condutancia.
+	 */
+	public static float conductance(long eInside, long eCut) {
+		return (float) eCut / (float) eInside;
+	}
+
+	/**
+	 * Modularidade Q = soma_c [e_c / E - (vol_c / 2E)^2], onde e_c e' o numero
+	 * de arestas internas e vol_c o volume da comunidade c.
+	 * 
+	 * Referencia:
+	 * https://www.cs.umd.edu/class/fall2009/cmsc858l/lecs/Lec10-modularity.pdf
+	 * 
+	 * Custo: Theta(k)
+	 * 
+	 * @param internal
+	 *            Arestas internas de cada comunidade.
+	 * @param volume
+	 *            Volume de cada comunidade.
+	 * @param edgeCount
+	 *            Total de arestas do grafo.
+	 * @return Modularidade.
+	 */
+	public static double modularity(long[] internal, long[] volume,
+			long edgeCount) {
+		if (edgeCount == 0)
+			return 0;
+		double E = edgeCount;
+		double q = 0;
+		for (int c = 0; c < internal.length; c++) {
+			double a = volume[c] / (2 * E);
+			q += internal[c] / E - a * a;
+		}
+		return q;
+	}
+
+	/**
+	 * Modularidade de uma particao em duas regioes A e B, a partir dos numeros
+	 * de arestas de cada regiao. Mesmo valor de
+	 * {@link #modularity(long[], long[], long)} com k = 2.
+	 * 
+	 * Custo: O(1)
+	 * 
+	 * @param eAA
+	 *            Numero de arestas na regiao A.
+	 * @param eBB
+	 *            Numero de arestas na regiao B.
+	 * @param eAB
+	 *            Numero de arestas entre as regioes.
+	 * @param edgeCount
+	 *            Total de arestas do grafo.
+	 * @return Modularidade.
+	 */
+	public static double modularity(long eAA, long eBB, long eAB,
+			long edgeCount) {
+		if (edgeCount == 0)
+			return 0;
+		double E = edgeCount;
+		// Fracao das extremidades de arestas em cada regiao
+		double aA = (2 * eAA + eAB) / (2 * E);
+		double aB = (2 * eBB + eAB) / (2 * E);
+		return (eAA / E - aA * aA) + (eBB / E - aB * aB);
+	}
+}
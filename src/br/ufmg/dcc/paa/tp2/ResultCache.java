@@ -0,0 +1,320 @@
+package br.ufmg.dcc.paa.tp2;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.io.UTFDataFormatException;
+import java.nio.IntBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import br.ufmg.dcc.paa.tp2.util.Metrics;
+import br.ufmg.dcc.paa.tp2.util.Tuple2;
+
+/**
+ * Cache em disco dos resultados do ADC: a regiao honesta final, como mapa de
+ * bits, e as metricas. Cada resultado e' gravado num arquivo cujo nome e' o
+ * hash da chave, composta pela impressao digital do conteudo do grafo, pelas
+ * sementes, pelos vertices sybil e pelas opcoes do ADC. Como a chave depende
+ * do conteudo, qualquer alteracao nas entradas leva a outra chave, e nao a um
+ * resultado desatualizado.
+ * 
+ * Layout de cada arquivo (DataOutputStream, big-endian):
+ * 
+ * <pre>
+ * int    MAGIC ("TP2R")
+ * int    VERSION
+ * UTF    chave completa, conferida na leitura
+ * int    V (numero de vertices)
+ * float  10 metricas, na ordem de metricsG*.txt
+ * int    numero de palavras do mapa de bits
+ * long   palavras do mapa de bits da regiao honesta
+ * </pre>
+ * 
+ * Os arquivos sao gravados num arquivo temporario e renomeados, de modo que um
+ * leitor nunca ve um resultado incompleto; arquivos com conteudo invalido sao
+ * tratados como ausentes e removidos, e erros de leitura transitorios apenas
+ * como ausentes. Quando o diretorio ultrapassa o limite de tamanho, os
+ * resultados usados ha' mais tempo (data de modificacao, atualizada a cada
+ * acerto) sao removidos. Os arquivos temporarios tambem contam no tamanho, e
+ * os deixados por uma execucao interrompida sao removidos.
+ * 
+ * @author Wilson de Carvalho
+ */
+public class ResultCache {
+	public static final int MAGIC = 0x54503252;
+	public static final int VERSION = 1;
+	private static final String SUFFIX = ".adc";
+	private static final String PART_SUFFIX = ".part";
+	// Idade a partir da qual um arquivo temporario e' considerado abandonado
+	private static final long STALE_PART_MILLIS = 60 * 60 * 1000;
+
+	private final File dir;
+	private final long maxBytes;
+
+	/**
+	 * @param dir
+	 *            Diretorio do cache; criado se nao existir.
+	 * @param maxBytes
+	 *            Tamanho maximo do diretorio, em bytes.
+	 */
+	public ResultCache(String dir, long maxBytes) {
+		this.dir = new File(dir);
+		this.maxBytes = maxBytes;
+		this.dir.mkdirs();
+	}
+
+	/**
+	 * Impressao digital de 128 bits do conteudo do grafo, independente do
+	 * formato do arquivo de origem.
+	 * 
+	 * Custo: Theta(V+E)
+	 * 
+	 * @return Impressao digital em hexadecimal.
+	 */
+	public static String fingerprint(CsrGraph graph) {
+		long[] h = { 0x9e3779b97f4a7c15L, 0xc2b2ae3d27d4eb4fL };
+		hash(h, graph.getOffsets());
+		hash(h, graph.getTargets());
+		return hex(h);
+	}
+
+	/**
+	 * Impressao digital de 128 bits de um conjunto de vertices, independente
+	 * da ordem.
+	 * 
+	 * Custo: O(n log n)
+	 * 
+	 * @return Impressao digital em hexadecimal.
+	 */
+	public static String fingerprint(int[] vertices) {
+		int[] sorted = Arrays.copyOf(vertices, vertices.length);
+		Arrays.sort(sorted);
+		long[] h = { 0x9e3779b97f4a7c15L, 0xc2b2ae3d27d4eb4fL };
+		hash(h, IntBuffer.wrap(sorted));
+		return hex(h);
+	}
+
+	/**
+	 * Procura o resultado da chave.
+	 * 
+	 * @param key
+	 *            Chave do resultado.
+	 * @param vertexCount
+	 *            Numero de vertices do grafo.
+	 * @return {regiao honesta, metricas}, ou nulo se nao houver resultado
+	 *         valido.
+	 */
+	public Tuple2<BitSet, Metrics> get(String key, int vertexCount) {
+		File file = this.fileOf(key);
+		if (!file.isFile())
+			return null;
+		DataInputStream in = null;
+		try {
+			try {
+				in = new DataInputStream(new BufferedInputStream(
+						new FileInputStream(file)));
+				if (in.readInt() != MAGIC || in.readInt() != VERSION
+						|| !in.readUTF().equals(key)
+						|| in.readInt() != vertexCount)
+					throw new StreamCorruptedException("Resultado invalido.");
+				Metrics met = new Metrics();
+				met.setAvgDegre(in.readFloat());
+				met.setModularity(in.readFloat());
+				met.setCondutSybil(in.readFloat());
+				met.setCondutHonest(in.readFloat());
+				met.setClustCoefSybil(in.readFloat());
+				met.setClustCoefHonest(in.readFloat());
+				met.setCorrectnessSybil(in.readFloat());
+				met.setCorrectnessHonest(in.readFloat());
+				met.setFalsePositive(in.readFloat());
+				met.setFalseNegative(in.readFloat());
+				int wordCount = in.readInt();
+				if (wordCount < 0 || wordCount > (vertexCount + 63) / 64)
+					throw new StreamCorruptedException("Resultado invalido.");
+				long[] words = new long[wordCount];
+				for (int i = 0; i < words.length; i++)
+					words[i] = in.readLong();
+				BitSet inA = BitSet.valueOf(words);
+				if (inA.length() > vertexCount)
+					throw new StreamCorruptedException("Resultado invalido.");
+				// Marca o resultado como usado recentemente
+				file.setLastModified(System.currentTimeMillis());
+				return new Tuple2<BitSet, Metrics>(inA, met);
+			} finally {
+				if (in != null)
+					in.close();
+			}
+		} catch (IOException ex) {
+			// Arquivo truncado, corrompido ou de outra chave com o mesmo hash;
+			// apos outros erros de leitura, possivelmente transitorios, o
+			// arquivo e' mantido
+			if (ex instanceof EOFException
+					|| ex instanceof StreamCorruptedException
+					|| ex instanceof UTFDataFormatException)
+				file.delete();
+			return null;
+		}
+	}
+
+	/**
+	 * Grava o resultado da chave e remove os resultados mais antigos se o
+	 * limite de tamanho for ultrapassado.
+	 * 
+	 * @param key
+	 *            Chave do resultado.
+	 * @param partition
+	 *            Particao final, com a regiao honesta em A.
+	 * @param met
+	 *            Metricas da particao.
+	 */
+	public void put(String key, Partition partition, Metrics met) {
+		int n = partition.getGraph().getVertexCount();
+		BitSet inA = new BitSet(n);
+		for (int u = 0; u < n; u++) {
+			if (partition.inA(u))
+				inA.set(u);
+		}
+		long[] words = inA.toLongArray();
+		File file = this.fileOf(key);
+		File tmp = null;
+		DataOutputStream out = null;
+		try {
+			try {
+				tmp = File.createTempFile("tmp", PART_SUFFIX, dir);
+				out = new DataOutputStream(new BufferedOutputStream(
+						new FileOutputStream(tmp)));
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeUTF(key);
+				out.writeInt(n);
+				out.writeFloat(met.getAvgDegre());
+				out.writeFloat(met.getModularity());
+				out.writeFloat(met.getCondutSybil());
+				out.writeFloat(met.getCondutHonest());
+				out.writeFloat(met.getClustCoefSybil());
+				out.writeFloat(met.getClustCoefHonest());
+				out.writeFloat(met.getCorrectnessSybil());
+				out.writeFloat(met.getCorrectnessHonest());
+				out.writeFloat(met.getFalsePositive());
+				out.writeFloat(met.getFalseNegative());
+				out.writeInt(words.length);
+				for (int i = 0; i < words.length; i++)
+					out.writeLong(words[i]);
+				out.close();
+				out = null;
+				try {
+					Files.move(tmp.toPath(), file.toPath(),
+							StandardCopyOption.ATOMIC_MOVE);
+				} catch (AtomicMoveNotSupportedException ex) {
+					Files.move(tmp.toPath(), file.toPath(),
+							StandardCopyOption.REPLACE_EXISTING);
+				}
+			} finally {
+				if (out != null)
+					out.close();
+				if (tmp != null && tmp.exists())
+					tmp.delete();
+			}
+		} catch (IOException ex) {
+			ex.printStackTrace();
+		}
+		this.evict();
+	}
+
+	/**
+	 * Remove os arquivos temporarios abandonados e os resultados usados ha'
+	 * mais tempo ate' que o diretorio caiba no limite de tamanho. Arquivos
+	 * temporarios recentes podem estar sendo gravados e apenas contam no
+	 * tamanho.
+	 */
+	private synchronized void evict() {
+		File[] files = dir.listFiles();
+		if (files == null)
+			return;
+		// Datas lidas uma unica vez, para que a ordenacao nao mude se algum
+		// resultado for usado durante a remocao
+		List<Tuple2<Long, File>> entries = new ArrayList<Tuple2<Long, File>>();
+		long total = 0;
+		long now = System.currentTimeMillis();
+		for (int i = 0; i < files.length; i++) {
+			String name = files[i].getName();
+			if (name.endsWith(PART_SUFFIX)) {
+				long length = files[i].length();
+				if (now - files[i].lastModified() < STALE_PART_MILLIS
+						|| !files[i].delete())
+					total += length;
+				continue;
+			}
+			if (!name.endsWith(SUFFIX))
+				continue;
+			total += files[i].length();
+			entries.add(new Tuple2<Long, File>(files[i].lastModified(),
+					files[i]));
+		}
+		if (total <= maxBytes)
+			return;
+		Collections.sort(entries, new Comparator<Tuple2<Long, File>>() {
+			@Override
+			public int compare(Tuple2<Long, File> a, Tuple2<Long, File> b) {
+				return a._1.compareTo(b._1);
+			}
+		});
+		for (int i = 0; i < entries.size() && total > maxBytes; i++) {
+			File f = entries.get(i)._2;
+			long length = f.length();
+			if (f.delete())
+				total -= length;
+		}
+	}
+
+	private File fileOf(String key) {
+		char[] chars = key.toCharArray();
+		int[] values = new int[chars.length];
+		for (int i = 0; i < chars.length; i++)
+			values[i] = chars[i];
+		long[] h = { 0x9e3779b97f4a7c15L, 0xc2b2ae3d27d4eb4fL };
+		hash(h, IntBuffer.wrap(values));
+		return new File(dir, hex(h) + SUFFIX);
+	}
+
+	/**
+	 * Acumula os inteiros em dois hashes de 64 bits independentes, misturados
+	 * com a funcao de finalizacao do SplitMix64.
+	 */
+	private static void hash(long[] h, IntBuffer values) {
+		int n = values.limit();
+		long h1 = h[0] ^ n, h2 = h[1] ^ ((long) n << 32);
+		for (int i = 0; i < n; i++) {
+			long x = values.get(i) & 0xffffffffL;
+			h1 = mix(h1 + x);
+			h2 = mix(h2 ^ (x * 0xff51afd7ed558ccdL));
+		}
+		h[0] = h1;
+		h[1] = h2;
+	}
+
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	private static String hex(long[] h) {
+		return String.format("%016x%016x", h[0], h[1]);
+	}
+}
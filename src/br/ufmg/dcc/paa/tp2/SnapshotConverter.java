@@ -0,0 +1,49 @@
+package br.ufmg.dcc.paa.tp2;
+
+import java.io.IOException;
+
+import br.ufmg.dcc.paa.tp2.util.GraphReader;
+import br.ufmg.dcc.paa.tp2.util.Tuple2;
+
+/**
+ * Classe com metodo main para converter um grafo em lista de adjacencias para
+ * o formato binario de {@link GraphSnapshot}. O arquivo gerado pode ser
+ * informado no lugar do grafo original em {@link Main}.
+ * 
+ * @author Wilson de Carvalho
+ */
+public class SnapshotConverter {
+
+	public static void main(String[] args) {
+		if (args.length != 2) {
+			System.out
+					.println("Sao necessarios 2 arquivos na seguinte ordem:");
+			System.out.println("\tArquivo 1 - Grafo (lista de adjacencias)");
+			System.out.println("\tArquivo 2 - Snapshot binario a ser gerado");
+			return;
+		}
+		long start = System.currentTimeMillis();
+		System.out.println("Fazendo leitura do grafo...");
+		Tuple2<int[], int[]> csr = new GraphReader().readGraphMapped(args[0]);
+		if (csr == null) {
+			System.out.println("Erro ao fazer a leitura do grafo.");
+			return;
+		}
+		try {
+			CsrGraph graph = new CsrGraph(csr._1, csr._2);
+			csr = null;
+			System.out.println("Gravando snapshot...");
+			GraphSnapshot.write(graph, args[1]);
+			System.out.println("Snapshot gravado em '" + args[1] + "' ("
+					+ graph.getVertexCount() + " vertices, "
+					+ graph.getEdgeCount() + " arestas) em "
+					+ (System.currentTimeMillis() - start) + " ms.");
+		} catch (IllegalArgumentException ex) {
+			System.out.println(ex.getMessage());
+			System.out.println("Erro ao fazer a leitura do grafo.");
+		} catch (IOException ex) {
+			ex.printStackTrace();
+			System.out.println("Erro ao gravar o snapshot.");
+		}
+	}
+}
@@ -0,0 +1,178 @@
+package br.ufmg.dcc.paa.tp2;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Propagacao de confianca por passeios aleatorios curtos a partir das
+ * sementes, no estilo do SybilRank (Cao et al., "Aiding the Detection of Fake
+ * Accounts in Large Scale Social Online Services").
+ * 
+ * A confianca total V e' dividida entre as sementes e, a cada iteracao, cada
+ * vertice distribui a sua confianca igualmente entre os vizinhos. Sao feitas
+ * no maximo ceil(log2 V) iteracoes, ja' que as arestas de ataque entre as
+ * regioes honesta e Sybil sao poucas e uma propagacao longa espalharia a
+ * confianca pelo grafo inteiro. A propagacao para antes se a variacao entre
+ * duas iteracoes for desprezivel.
+ * 
+ * Cada iteracao e' uma multiplicacao de matriz esparsa por vetor feita no
+ * sentido "pull": cada vertice soma a contribuicao dos vizinhos, de modo que
+ * as threads escrevem em posicoes disjuntas e nao precisam de sincronizacao.
+ * 
+ * @author Wilson de Carvalho
+ */
+public class SybilRank {
+	// Vertices por bloco de trabalho
+	private static final int CHUNK = 4096;
+	// Variacao relativa (norma L1) abaixo da qual a propagacao para
+	private static final double TOLERANCE = 1e-9;
+
+	private final CsrGraph graph;
+	private final int threads;
+
+	/**
+	 * @param graph
+	 *            Grafo.
+	 */
+	public SybilRank(CsrGraph graph) {
+		this(graph, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param graph
+	 *            Grafo.
+	 * @param threads
+	 *            Numero de threads.
+	 */
+	public SybilRank(CsrGraph graph, int threads) {
+		this.graph = graph;
+		this.threads = threads;
+	}
+
+	/**
+	 * Numero maximo de iteracoes: ceil(log2 V).
+	 */
+	public int maxIterations() {
+		int n = graph.getVertexCount();
+		return (n <= 1) ? 1 : 32 - Integer.numberOfLeadingZeros(n - 1);
+	}
+
+	/**
+	 * Propaga a confianca a partir das sementes.
+	 * 
+	 * Custo: O((V+E) log V)
+	 * 
+	 * @param seeds
+	 *            Vertices confiaveis.
+	 * @return Confianca de cada vertice.
+	 */
+	public double[] trust(int[] seeds) {
+		final int n = graph.getVertexCount();
+		double[] current = new double[n];
+		for (int i = 0; i < seeds.length; i++)
+			current[seeds[i]] += (double) n / seeds.length;
+		double[] next = new double[n];
+		int iterations = this.maxIterations();
+		ExecutorService pool = (threads > 1) ? Executors
+				.newFixedThreadPool(threads) : null;
+		try {
+			for (int it = 0; it < iterations; it++) {
+				double change = this.propagate(pool, current, next);
+				double[] tmp = current;
+				current = next;
+				next = tmp;
+				if (change <= TOLERANCE * n)
+					break;
+			}
+		} finally {
+			if (pool != null)
+				pool.shutdown();
+		}
+		return current;
+	}
+
+	/**
+	 * Ordena os vertices pela confianca normalizada pelo grau, do mais para o
+	 * menos confiavel. Vertices isolados ficam com confianca 0.
+	 * 
+	 * Custo: O((V+E) log V)
+	 * 
+	 * @param seeds
+	 *            Vertices confiaveis.
+	 * @return Vertices em ordem decrescente de confianca normalizada.
+	 */
+	public int[] rank(int[] seeds) {
+		double[] trust = this.trust(seeds);
+		int n = trust.length;
+		// Chave (confianca em float, positiva) nos 32 bits altos e vertice nos
+		// baixos: a ordenacao de long[] dispensa objetos e comparadores
+		long[] keys = new long[n];
+		for (int u = 0; u < n; u++) {
+			int d = graph.degree(u);
+			float score = (d == 0) ? 0 : (float) (trust[u] / d);
+			keys[u] = ((long) Float.floatToIntBits(score) << 32) | u;
+		}
+		Arrays.sort(keys);
+		int[] order = new int[n];
+		for (int i = 0; i < n; i++)
+			order[i] = (int) keys[n - 1 - i];
+		return order;
+	}
+
+	/**
+	 * Uma iteracao: next[v] = soma de current[u] / grau(u) para u vizinho de
+	 * v.
+	 * 
+	 * @return Norma L1 da diferenca entre next e current.
+	 */
+	private double propagate(ExecutorService pool, final double[] current,
+			final double[] next) {
+		final int n = current.length;
+		final AtomicInteger nextChunk = new AtomicInteger(0);
+		final double[] changes = new double[Math.max(threads, 1)];
+		final AtomicInteger workerId = new AtomicInteger(0);
+		Runnable worker = new Runnable() {
+			@Override
+			public void run() {
+				int id = workerId.getAndIncrement();
+				double change = 0;
+				int start;
+				while ((start = nextChunk.getAndAdd(CHUNK)) < n) {
+					int end = Math.min(start + CHUNK, n);
+					for (int v = start; v < end; v++) {
+						double sum = 0;
+						for (int i = graph.begin(v); i < graph.end(v); i++) {
+							int u = graph.target(i);
+							sum += current[u] / graph.degree(u);
+						}
+						next[v] = sum;
+						change += Math.abs(sum - current[v]);
+					}
+				}
+				changes[id] = change;
+			}
+		};
+		if (pool == null) {
+			worker.run();
+		} else {
+			try {
+				List<Future<?>> futures = new ArrayList<Future<?>>(threads);
+				for (int i = 0; i < threads; i++)
+					futures.add(pool.submit(worker));
+				for (int i = 0; i < futures.size(); i++)
+					futures.get(i).get();
+			} catch (Exception ex) {
+				throw new RuntimeException(ex);
+			}
+		}
+		double total = 0;
+		for (int i = 0; i < changes.length; i++)
+			total += changes[i];
+		return total;
+	}
+}
@@ -0,0 +1,178 @@
+package br.ufmg.dcc.paa.tp2;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Resultado de uma busca em largura ou em profundidade, guardado em vetores
+ * primitivos indexados pelo vertice (cerca de 13 bytes por vertice, sem um
+ * objeto por vertice).
+ * 
+ * As buscas sao iterativas: a BFS usa uma fila em vetor com capacidade V (cada
+ * vertice entra uma unica vez) e a DFS uma pilha explicita, de modo que grafos
+ * com dezenas de milhoes de vertices e caminhos longos nao estouram a pilha de
+ * chamadas.
+ * 
+ * @author Wilson de Carvalho
+ */
+public class Traversal {
+	public static final byte WHITE = 1;
+	public static final byte GRAY = 2;
+	public static final byte BLACK = 3;
+
+	private final byte[] color;
+	// Distancia a' origem (BFS) ou tempo de descoberta (DFS)
+	private final int[] d;
+	// Tempo de finalizacao (apenas DFS)
+	private final int[] f;
+	// Predecessor na arvore de busca, ou -1
+	private final int[] p;
+
+	private Traversal(int n) {
+		this.color = new byte[n];
+		this.d = new int[n];
+		this.f = new int[n];
+		this.p = new int[n];
+		Arrays.fill(color, WHITE);
+		Arrays.fill(p, -1);
+	}
+
+	public int getVertexCount() {
+		return color.length;
+	}
+
+	/**
+	 * @return WHITE se u nao foi alcancado, BLACK caso contrario.
+	 */
+	public byte getColor(int u) {
+		return color[u];
+	}
+
+	public boolean isVisited(int u) {
+		return color[u] != WHITE;
+	}
+
+	/**
+	 * @return Distancia de u a' origem, em arestas, na BFS; tempo de
+	 *         descoberta de u na DFS.
+	 */
+	public int getDiscovery(int u) {
+		return d[u];
+	}
+
+	/**
+	 * @return Tempo de finalizacao de u na DFS.
+	 */
+	public int getFinish(int u) {
+		return f[u];
+	}
+
+	/**
+	 * @return Predecessor de u na arvore de busca, ou -1 para as raizes e os
+	 *         vertices nao alcancados.
+	 */
+	public int getPredecessor(int u) {
+		return p[u];
+	}
+
+	/**
+	 * Efetua a busca em largura sobre listas de adjacencias no formato CSR.
+	 * 
+	 * Custo: Theta(V) para a inicializacao mais O(E)
+	 * 
+	 * @param offsets
+	 *            Inicio da lista de cada vertice (V+1 posicoes).
+	 * @param targets
+	 *            Vizinhos de todos os vertices.
+	 * @param s
+	 *            Vertice de inicio da busca.
+	 * @return Resultado da busca.
+	 */
+	static Traversal bfs(IntBuffer offsets, IntBuffer targets, int s) {
+		int n = offsets.limit() - 1;
+		Traversal t = new Traversal(n);
+		int[] queue = new int[n];
+		int head = 0, tail = 0;
+		t.color[s] = GRAY;
+		queue[tail++] = s;
+		while (head < tail) {
+			int u = queue[head++];
+			for (int i = offsets.get(u); i < offsets.get(u + 1); i++) {
+				int v = targets.get(i);
+				if (t.color[v] == WHITE) {
+					t.color[v] = GRAY;
+					t.d[v] = t.d[u] + 1;
+					t.p[v] = u;
+					queue[tail++] = v;
+				}
+			}
+			t.color[u] = BLACK;
+		}
+		return t;
+	}
+
+	/**
+	 * Efetua a busca em profundidade sobre listas de adjacencias no formato
+	 * CSR. Os tempos de descoberta e finalizacao sao contados de 1 a 2V.
+	 * 
+	 * Custo: Theta(V) para a inicializacao mais O(E)
+	 * 
+	 * @param offsets
+	 *            Inicio da lista de cada vertice (V+1 posicoes).
+	 * @param targets
+	 *            Vizinhos de todos os vertices.
+	 * @param s
+	 *            Vertice de inicio da busca, ou -1 para visitar todos os
+	 *            vertices em ordem crescente.
+	 * @return Resultado da busca.
+	 */
+	static Traversal dfs(IntBuffer offsets, IntBuffer targets, int s) {
+		int n = offsets.limit() - 1;
+		Traversal t = new Traversal(n);
+		int[] stack = new int[n];
+		int[] next = new int[n];
+		if (s >= 0) {
+			t.dfsVisit(s, offsets, targets, stack, next, 0);
+		} else {
+			int time = 0;
+			for (int u = 0; u < n; u++) {
+				if (t.color[u] == WHITE)
+					time = t.dfsVisit(u, offsets, targets, stack, next, time);
+			}
+		}
+		return t;
+	}
+
+	/**
+	 * Visita iterativa a partir de s, com pilha explicita. next[u] guarda a
+	 * posicao do proximo vizinho de u a ser examinado.
+	 * 
+	 * @return Tempo ao final da visita.
+	 */
+	private int dfsVisit(int s, IntBuffer offsets, IntBuffer targets,
+			int[] stack, int[] next, int time) {
+		int top = 0;
+		stack[top++] = s;
+		color[s] = GRAY;
+		d[s] = ++time;
+		next[s] = offsets.get(s);
+		while (top > 0) {
+			int u = stack[top - 1];
+			if (next[u] < offsets.get(u + 1)) {
+				int v = targets.get(next[u]++);
+				if (color[v] == WHITE) {
+					color[v] = GRAY;
+					d[v] = ++time;
+					p[v] = u;
+					next[v] = offsets.get(v);
+					stack[top++] = v;
+				}
+			} else {
+				top--;
+				color[u] = BLACK;
+				f[u] = ++time;
+			}
+		}
+		return time;
+	}
+}
@@ -0,0 +1,508 @@
+package br.ufmg.dcc.paa.tp2;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import br.ufmg.dcc.paa.tp2.util.IntList;
+import br.ufmg.dcc.paa.tp2.util.Math;
+import br.ufmg.dcc.paa.tp2.util.Tuple2;
+
+/**
+ * Contagem paralela de triangulos sobre um {@link CsrGraph}, usada no calculo
+ * do coeficiente de agrupamento.
+ * 
+ * As arestas sao orientadas do vertice de menor para o de maior grau
+ * (desempate pelo identificador), o que limita o tamanho das listas
+ * orientadas a O(sqrt(E)) e faz com que cada triangulo seja encontrado uma
+ * unica vez. Os vizinhos comuns sao obtidos por intercalacao das listas
+ * ordenadas ou, quando uma lista e' muito maior que a outra, por busca
+ * galopante. Os vertices sao distribuidos entre as threads em blocos, sob
+ * demanda, para equilibrar a carga dos vertices de grau alto. Cada bloco
+ * acumula as contagens localmente, num vetor para os vertices do proprio bloco
+ * e numa tabela esparsa para os demais, e as soma ao resultado compartilhado
+ * ao terminar: cada vertice recebe no maximo uma soma atomica por bloco, e nao
+ * uma por triangulo, e a memoria extra de cada thread e' proporcional aos
+ * vertices tocados pelo bloco, e nao a V.
+ * 
+ * Opcionalmente, a contagem e' restrita ao subgrafo induzido por uma regiao
+ * (por exemplo, uma das regioes de uma {@link Partition}) ou, numa unica
+ * passada, aos subgrafos induzidos pelos dois lados de um {@link BitSet} ou
+ * pelas comunidades de um vetor de rotulos, sem as arestas de corte. Lacos
+ * sao ignorados.
+ * 
+ * Custo: O(E^{3/2}) no pior caso.
+ * 
+ * @author Wilson de Carvalho
+ */
+public class TriangleCounter {
+	// Numero de vertices por bloco de trabalho
+	private static final int CHUNK = 1024;
+	// Razao entre tamanhos de lista a partir da qual a busca galopante e' usada
+	private static final int GALLOP_RATIO = 16;
+
+	private final CsrGraph graph;
+	// Vertices considerados: aqueles com region.get(v) == inRegion
+	private final BitSet region;
+	private final boolean inRegion;
+	// Se verdadeiro, considera os dois lados de region e descarta apenas as
+	// arestas entre eles
+	private final boolean split;
+	// Comunidade de cada vertice; se presente, so' as arestas internas as
+	// comunidades sao consideradas
+	private final int[] labels;
+	private final int threads;
+
+	/**
+	 * @param graph
+	 *            Grafo.
+	 */
+	public TriangleCounter(CsrGraph graph) {
+		this(graph, null, true, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param graph
+	 *            Grafo.
+	 * @param region
+	 *            Conjunto de vertices que define a regiao, ou null para o
+	 *            grafo inteiro.
+	 * @param inRegion
+	 *            Valor do bit dos vertices considerados.
+	 * @param threads
+	 *            Numero de threads.
+	 */
+	public TriangleCounter(CsrGraph graph, BitSet region, boolean inRegion,
+			int threads) {
+		this.graph = graph;
+		this.region = region;
+		this.inRegion = inRegion;
+		this.split = false;
+		this.labels = null;
+		this.threads = threads;
+	}
+
+	/**
+	 * Considera simultaneamente os subgrafos induzidos pelos vertices com bit
+	 * ligado e com bit desligado em sides.
+	 * 
+	 * @param graph
+	 *            Grafo.
+	 * @param sides
+	 *            Lado de cada vertice.
+	 * @param threads
+	 *            Numero de threads.
+	 */
+	public TriangleCounter(CsrGraph graph, BitSet sides, int threads) {
+		this.graph = graph;
+		this.region = sides;
+		this.inRegion = true;
+		this.split = true;
+		this.labels = null;
+		this.threads = threads;
+	}
+
+	/**
+	 * Considera simultaneamente os subgrafos induzidos por cada comunidade.
+	 * 
+	 * @param graph
+	 *            Grafo.
+	 * @param labels
+	 *            Comunidade de cada vertice.
+	 * @param threads
+	 *            Numero de threads.
+	 */
+	public TriangleCounter(CsrGraph graph, int[] labels, int threads) {
+		this.graph = graph;
+		this.region = null;
+		this.inRegion = true;
+		this.split = false;
+		this.labels = labels;
+		this.threads = threads;
+	}
+
+	/**
+	 * Calcula a media do coeficiente de agrupamento local dos vertices
+	 * considerados, no subgrafo induzido por eles.
+	 * 
+	 * @return Coeficiente de agrupamento medio.
+	 */
+	public float clustCoeficient() {
+		int n = graph.getVertexCount();
+		int[] degree = new int[n];
+		long[] triangles = this.count(degree);
+		int size = 0;
+		Math.KahanSum sum = new Math.KahanSum();
+		for (int u = 0; u < n; u++) {
+			if (!this.include(u))
+				continue;
+			size++;
+			// Numero de combinacoes possiveis entre os vizinhos de u
+			long c = Math.pairs(degree[u]);
+			if (c != 0)
+				sum.add((double) triangles[u] / c);
+		}
+		return (float) sum.mean(size);
+	}
+
+	/**
+	 * Calcula, numa unica contagem, o coeficiente de agrupamento medio de cada
+	 * lado. Disponivel apenas no modo de dois lados.
+	 * 
+	 * @return Coeficientes dos vertices com bit ligado e com bit desligado.
+	 */
+	public Tuple2<Float, Float> clustCoeficientBySide() {
+		if (!split)
+			throw new IllegalStateException(
+					"Contagem nao foi criada com dois lados");
+		int n = graph.getVertexCount();
+		int[] degree = new int[n];
+		long[] triangles = this.count(degree);
+		int sizeOn = 0;
+		Math.KahanSum sumOn = new Math.KahanSum();
+		Math.KahanSum sumOff = new Math.KahanSum();
+		for (int u = 0; u < n; u++) {
+			boolean on = region.get(u);
+			if (on)
+				sizeOn++;
+			long c = Math.pairs(degree[u]);
+			if (c != 0)
+				(on ? sumOn : sumOff).add((double) triangles[u] / c);
+		}
+		return new Tuple2<Float, Float>((float) sumOn.mean(sizeOn),
+				(float) sumOff.mean(n - sizeOn));
+	}
+
+	/**
+	 * Calcula, numa unica contagem, o coeficiente de agrupamento medio de cada
+	 * comunidade. Disponivel apenas no modo de rotulos.
+	 * 
+	 * @param communityCount
+	 *            Numero de comunidades; os rotulos ficam em [0,
+	 *            communityCount).
+	 * @return Coeficiente de cada comunidade.
+	 */
+	public double[] clustCoeficientByLabel(int communityCount) {
+		if (labels == null)
+			throw new IllegalStateException(
+					"Contagem nao foi criada com rotulos");
+		int n = graph.getVertexCount();
+		int[] degree = new int[n];
+		long[] triangles = this.count(degree);
+		double[] sum = new double[communityCount];
+		int[] size = new int[communityCount];
+		for (int u = 0; u < n; u++) {
+			size[labels[u]]++;
+			long c = Math.pairs(degree[u]);
+			if (c != 0)
+				sum[labels[u]] += (double) triangles[u] / c;
+		}
+		for (int c = 0; c < communityCount; c++) {
+			if (size[c] > 0)
+				sum[c] /= size[c];
+		}
+		return sum;
+	}
+
+	/**
+	 * Conta os triangulos que contem cada vertice.
+	 * 
+	 * @return Vetor com o numero de triangulos de cada vertice (zero para os
+	 *         vertices fora da regiao).
+	 */
+	public long[] countPerVertex() {
+		return this.count(new int[graph.getVertexCount()]);
+	}
+
+	/**
+	 * @param degree
+	 *            Recebe o grau de cada vertice no subgrafo considerado.
+	 */
+	private long[] count(int[] degree) {
+		final int n = graph.getVertexCount();
+		// Listas orientadas: apenas os vizinhos de maior posto, mantendo a
+		// ordem crescente de identificador
+		final int[] fwdOffsets = new int[n + 1];
+		for (int u = 0; u < n; u++) {
+			int count = 0;
+			if (this.include(u)) {
+				for (int i = graph.begin(u); i < graph.end(u); i++) {
+					int v = graph.target(i);
+					if (v == u || !this.keep(u, v))
+						continue;
+					degree[u]++;
+					if (this.before(u, v))
+						count++;
+				}
+			}
+			fwdOffsets[u + 1] = fwdOffsets[u] + count;
+		}
+		final int[] fwdTargets = new int[fwdOffsets[n]];
+		for (int u = 0; u < n; u++) {
+			int pos = fwdOffsets[u];
+			if (pos == fwdOffsets[u + 1])
+				continue;
+			for (int i = graph.begin(u); i < graph.end(u); i++) {
+				int v = graph.target(i);
+				if (v != u && this.keep(u, v) && this.before(u, v))
+					fwdTargets[pos++] = v;
+			}
+		}
+		final AtomicLongArray counts = new AtomicLongArray(n);
+		final AtomicInteger next = new AtomicInteger(0);
+		Runnable worker = new Runnable() {
+			@Override
+			public void run() {
+				// Criado apenas se a thread pegar algum bloco
+				ChunkCounts local = null;
+				int start;
+				while ((start = next.getAndAdd(CHUNK)) < n) {
+					int end = java.lang.Math.min(start + CHUNK, n);
+					if (local == null)
+						local = new ChunkCounts();
+					local.reset(start, end);
+					for (int u = start; u < end; u++)
+						countFrom(u, fwdOffsets, fwdTargets, local);
+					local.flushTo(counts);
+				}
+			}
+		};
+		this.runWorkers(worker);
+		long[] ret = new long[n];
+		for (int u = 0; u < n; u++)
+			ret[u] = counts.get(u);
+		return ret;
+	}
+
+	/**
+	 * Conta os triangulos cujo vertice de menor posto e' u.
+	 */
+	private void countFrom(int u, int[] fwdOffsets, int[] fwdTargets,
+			ChunkCounts counts) {
+		long countU = 0;
+		int uStart = fwdOffsets[u], uEnd = fwdOffsets[u + 1];
+		for (int k = uStart; k < uEnd; k++) {
+			int v = fwdTargets[k];
+			int vStart = fwdOffsets[v], vEnd = fwdOffsets[v + 1];
+			long common;
+			int uSize = uEnd - uStart, vSize = vEnd - vStart;
+			if (uSize > GALLOP_RATIO * vSize)
+				common = gallop(fwdTargets, vStart, vEnd, uStart, uEnd, counts);
+			else if (vSize > GALLOP_RATIO * uSize)
+				common = gallop(fwdTargets, uStart, uEnd, vStart, vEnd, counts);
+			else
+				common = merge(fwdTargets, uStart, uEnd, vStart, vEnd, counts);
+			if (common > 0) {
+				countU += common;
+				counts.add(v, common);
+			}
+		}
+		if (countU > 0)
+			counts.add(u, countU);
+	}
+
+	/**
+	 * Intersecao por intercalacao. Cada elemento comum w fecha um triangulo.
+	 * 
+	 * @return Numero de elementos comuns.
+	 */
+	private static long merge(int[] a, int i, int iEnd, int j, int jEnd,
+			ChunkCounts counts) {
+		long common = 0;
+		while (i < iEnd && j < jEnd) {
+			int x = a[i];
+			int y = a[j];
+			if (x < y) {
+				i++;
+			} else if (x > y) {
+				j++;
+			} else {
+				counts.add(x, 1);
+				common++;
+				i++;
+				j++;
+			}
+		}
+		return common;
+	}
+
+	/**
+	 * Intersecao por busca galopante de cada elemento da lista menor
+	 * [small, smallEnd) na lista maior [large, largeEnd).
+	 * 
+	 * @return Numero de elementos comuns.
+	 */
+	private static long gallop(int[] a, int small, int smallEnd, int large,
+			int largeEnd, ChunkCounts counts) {
+		long common = 0;
+		int low = large;
+		for (int i = small; i < smallEnd && low < largeEnd; i++) {
+			int x = a[i];
+			// Avanca em passos exponenciais ate' passar de x
+			int step = 1;
+			int high = low;
+			while (high < largeEnd && a[high] < x) {
+				low = high + 1;
+				high += step;
+				step <<= 1;
+			}
+			high = java.lang.Math.min(high, largeEnd - 1);
+			// Busca binaria em [low, high]
+			while (low <= high) {
+				int mid = (low + high) >>> 1;
+				if (a[mid] < x)
+					low = mid + 1;
+				else
+					high = mid - 1;
+			}
+			if (low < largeEnd && a[low] == x) {
+				counts.add(x, 1);
+				common++;
+				low++;
+			}
+		}
+		return common;
+	}
+
+	private boolean include(int v) {
+		return region == null || split || region.get(v) == inRegion;
+	}
+
+	/**
+	 * Verifica se a aresta (u, v), com u ja' considerado, pertence ao
+	 * subgrafo.
+	 */
+	private boolean keep(int u, int v) {
+		if (labels != null)
+			return labels[u] == labels[v];
+		if (region == null)
+			return true;
+		if (split)
+			return region.get(u) == region.get(v);
+		return region.get(v) == inRegion;
+	}
+
+	/**
+	 * Ordem total usada na orientacao das arestas: grau e, em caso de empate,
+	 * identificador.
+	 */
+	private boolean before(int u, int v) {
+		int du = graph.degree(u);
+		int dv = graph.degree(v);
+		return du < dv || (du == dv && u < v);
+	}
+
+	private void runWorkers(Runnable worker) {
+		if (threads <= 1) {
+			worker.run();
+			return;
+		}
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<?>> futures = new ArrayList<Future<?>>(threads);
+			for (int i = 0; i < threads; i++)
+				futures.add(pool.submit(worker));
+			for (int i = 0; i < futures.size(); i++)
+				futures.get(i).get();
+		} catch (Exception ex) {
+			throw new RuntimeException(ex);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Contagens de um bloco [start, end): os vertices do bloco sao contados
+	 * num vetor e os demais numa tabela de enderecamento aberto, esvaziados ao
+	 * final de cada bloco.
+	 */
+	private static final class ChunkCounts {
+		private final long[] inChunk = new long[CHUNK];
+		private int start;
+		private int end;
+		// Tabela esparsa dos vertices fora do bloco; -1 indica posicao livre
+		private int[] keys = new int[64];
+		private long[] values = new long[64];
+		// Posicoes ocupadas da tabela, para esvazia-la sem percorre-la toda
+		private final IntList used = new IntList();
+
+		ChunkCounts() {
+			Arrays.fill(keys, -1);
+		}
+
+		void reset(int start, int end) {
+			this.start = start;
+			this.end = end;
+		}
+
+		void add(int v, long delta) {
+			if (v >= start && v < end) {
+				inChunk[v - start] += delta;
+				return;
+			}
+			if (2 * (used.size() + 1) > keys.length)
+				this.grow();
+			int slot = this.find(v);
+			if (keys[slot] < 0) {
+				keys[slot] = v;
+				used.add(slot);
+			}
+			values[slot] += delta;
+		}
+
+		/**
+		 * Soma as contagens do bloco ao resultado e esvazia as estruturas.
+		 * Custo: O(CHUNK + vertices fora do bloco tocados)
+		 */
+		void flushTo(AtomicLongArray counts) {
+			for (int i = 0; i < end - start; i++) {
+				if (inChunk[i] != 0) {
+					counts.addAndGet(start + i, inChunk[i]);
+					inChunk[i] = 0;
+				}
+			}
+			for (int i = 0; i < used.size(); i++) {
+				int slot = used.get(i);
+				counts.addAndGet(keys[slot], values[slot]);
+				keys[slot] = -1;
+				values[slot] = 0;
+			}
+			used.clear();
+		}
+
+		/**
+		 * @return Posicao de v na tabela, ou a posicao livre em que deve ser
+		 *         inserido (sondagem linear).
+		 */
+		private int find(int v) {
+			int mask = keys.length - 1;
+			int slot = (v * 0x9e3779b9) >>> 16 & mask;
+			while (keys[slot] >= 0 && keys[slot] != v)
+				slot = (slot + 1) & mask;
+			return slot;
+		}
+
+		private void grow() {
+			int[] oldKeys = keys;
+			long[] oldValues = values;
+			keys = new int[oldKeys.length * 2];
+			values = new long[oldKeys.length * 2];
+			Arrays.fill(keys, -1);
+			used.clear();
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldKeys[i] < 0)
+					continue;
+				int slot = this.find(oldKeys[i]);
+				keys[slot] = oldKeys[i];
+				values[slot] = oldValues[i];
+				used.add(slot);
+			}
+		}
+	}
+}
@@ -0,0 +1,139 @@
+package br.ufmg.dcc.paa.tp2.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Interpretador de listas de adjacencias que le inteiros ASCII diretamente de
+ * um {@link ByteBuffer}, sem criar Strings nem Integers.
+ * 
+ * Aceita o mesmo formato de {@link GraphReader#readGraph(String)}: cada linha
+ * nao vazia corresponde a um vertice, cujo identificador (primeiro campo) e'
+ * ignorado, seguido dos vizinhos separados por um unico espaco. Linhas
+ * terminam em '\n', '\r' ou "\r\n".
+ * 
+ * @author Wilson de Carvalho
+ */
+class AdjacencyParser {
+	private final IntList offsets;
+	private final IntList targets;
+	// Numero de linhas lidas, inclusive as vazias
+	private long lineCount = 0;
+	// Texto da linha invalida, caso exista
+	private String errorLine = null;
+
+	/**
+	 * @param offsets
+	 *            Recebe, para cada vertice, a posicao do seu primeiro vizinho
+	 *            em targets.
+	 * @param targets
+	 *            Recebe os vizinhos de todos os vertices.
+	 */
+	AdjacencyParser(IntList offsets, IntList targets) {
+		this.offsets = offsets;
+		this.targets = targets;
+	}
+
+	IntList getOffsets() {
+		return offsets;
+	}
+
+	IntList getTargets() {
+		return targets;
+	}
+
+	long getLineCount() {
+		return lineCount;
+	}
+
+	String getErrorLine() {
+		return errorLine;
+	}
+
+	/**
+	 * Interpreta as linhas contidas em buf[0, end). O trecho deve terminar em
+	 * fim de linha ou no final do arquivo.
+	 * 
+	 * Custo: Theta(end)
+	 * 
+	 * @return Falso se alguma linha for invalida.
+	 */
+	boolean parse(ByteBuffer buf, int end) {
+		int pos = 0;
+		while (pos < end) {
+			int lineEnd = pos;
+			byte c = 0;
+			while (lineEnd < end && (c = buf.get(lineEnd)) != '\n' && c != '\r')
+				lineEnd++;
+			lineCount++;
+			if (!this.parseLine(buf, pos, lineEnd)) {
+				byte[] bytes = new byte[lineEnd - pos];
+				for (int i = 0; i < bytes.length; i++)
+					bytes[i] = buf.get(pos + i);
+				errorLine = new String(bytes, Charset.defaultCharset());
+				return false;
+			}
+			pos = lineEnd + 1;
+			// "\r\n" e' um unico fim de linha
+			if (c == '\r' && pos < end && buf.get(pos) == '\n')
+				pos++;
+		}
+		return true;
+	}
+
+	/**
+	 * Interpreta uma linha, equivalente a line.split(" ") seguido de
+	 * Integer.parseInt de cada vizinho. Em caso de erro, os vizinhos ja' lidos
+	 * permanecem em targets e a leitura deve ser abandonada.
+	 * 
+	 * @return Falso se a linha for invalida.
+	 */
+	private boolean parseLine(ByteBuffer buf, int start, int end) {
+		// Linhas em branco (equivalente a trim().isEmpty()) sao ignoradas
+		int i = start;
+		while (i < end && (buf.get(i) & 0xFF) <= ' ')
+			i++;
+		if (i == end)
+			return true;
+		int mark = targets.size();
+		// O primeiro campo e' o indicador do vertice e nao e' validado
+		i = start;
+		while (i < end && buf.get(i) != ' ')
+			i++;
+		while (i < end) {
+			// i aponta para um espaco separador
+			i++;
+			if (i == end || buf.get(i) == ' ') {
+				// Campos vazios so' sao aceitos no final da linha
+				while (i < end && buf.get(i) == ' ')
+					i++;
+				if (i == end)
+					break;
+				return false;
+			}
+			boolean negative = false;
+			byte c = buf.get(i);
+			if (c == '-' || c == '+') {
+				negative = (c == '-');
+				i++;
+			}
+			int digits = 0;
+			long value = 0;
+			while (i < end && (c = buf.get(i)) != ' ') {
+				if (c < '0' || c > '9' || value > Integer.MAX_VALUE)
+					return false;
+				value = value * 10 + (c - '0');
+				digits++;
+				i++;
+			}
+			if (negative)
+				value = -value;
+			if (digits == 0 || value > Integer.MAX_VALUE
+					|| value < Integer.MIN_VALUE)
+				return false;
+			targets.add((int) value);
+		}
+		offsets.add(mark);
+		return true;
+	}
+}
@@ -1,7 +1,15 @@
 package br.ufmg.dcc.paa.tp2.util;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.io.*;
 
 /**
@@ -10,27 +18,29 @@ import java.io.*;
  * @author Wilson de Carvalho
  */
 public class GraphReader {
+	// Tamanho inicial das janelas mapeadas em memoria
+	private static final int MAP_WINDOW = 1 << 28;
+	// Tamanho minimo dos trechos lidos em paralelo
+	private static final int MIN_CHUNK = 1 << 20;
+	// Numero de trechos por thread na leitura paralela, para balancear a carga
+	private static final int CHUNKS_PER_THREAD = 4;
+
 	/**
 	 * Faz a leitura das linhas do arquivo de entrada e verifica se os dados sao
-	 * validos.
+	 * validos. O arquivo e' lido uma unica vez e linhas em branco sao
+	 * ignoradas.
 	 * 
-	 * @return Lista de vertices sybil.
+	 * @return Lista de vertices sybil, com exatamente um elemento por linha nao
+	 *         vazia.
 	 */
 	public int[] readSybil(String fileName) {
 		int[] ret = null;
 		BufferedReader br = null;
-		BufferedReader tmpBR = null;
 		try {
 			try {
 				br = new BufferedReader(new FileReader(fileName));
-				tmpBR = new BufferedReader(new FileReader(fileName));
-				int linesCount = 0;
-				while (tmpBR.readLine() != null)
-					linesCount++;
-				tmpBR.close();
-				ret = new int[linesCount];
+				IntList values = new IntList();
 				String line;
-				int i = 0;
 				while ((line = br.readLine()) != null) {
 					if (!line.trim().isEmpty()) {
 						Integer vLine;
@@ -39,11 +49,11 @@ public class GraphReader {
 							System.out.println("Linha invalida: " + line);
 							return null;
 						} else {
-							ret[i] = vLine;
-							i++;
+							values.add(vLine);
 						}
 					}
 				}
+				ret = values.toArray();
 			} catch (IOException e) {
 				e.printStackTrace();
 			}
@@ -58,6 +68,27 @@ public class GraphReader {
 		return ret;
 	}
 
+	/**
+	 * Descarta os vertices sybil fora do intervalo [0, vertexCount) do grafo,
+	 * que de outra forma seriam contados como corretamente classificados (ou
+	 * causariam excecao, se negativos). Os vertices descartados sao
+	 * informados em out.
+	 * 
+	 * Custo: Theta(|sybil|)
+	 * 
+	 * @return Vertices sybil validos; o proprio vetor se todos forem validos.
+	 */
+	public int[] validateSybil(int[] sybil, int vertexCount, PrintStream out) {
+		IntList valid = new IntList(sybil.length);
+		for (int i = 0; i < sybil.length; i++) {
+			if (sybil[i] >= 0 && sybil[i] < vertexCount)
+				valid.add(sybil[i]);
+			else
+				out.println("Vertice sybil invalido (ignorado): " + sybil[i]);
+		}
+		return (valid.size() == sybil.length) ? sybil : valid.toArray();
+	}
+
 	/**
 	 * Faz a leitura das linhas do arquivo de entrada e verifica se os dados sao
 	 * validos.
@@ -97,6 +128,256 @@ public class GraphReader {
 		return ret;
 	}
 
+	/**
+	 * Faz a leitura do arquivo de entrada mapeando-o em memoria e
+	 * interpretando os inteiros diretamente dos bytes, sem criar Strings nem
+	 * Integers. Aceita o mesmo formato e reporta as mesmas linhas invalidas que
+	 * {@link #readGraph(String)}.
+	 * 
+	 * O arquivo e' mapeado em janelas que terminam em fim de linha, de modo que
+	 * arquivos maiores que 2 GB tambem podem ser lidos.
+	 * 
+	 * @return Tupla com os vetores CSR (offsets, targets): os vizinhos do
+	 *         vertice u estao em targets[offsets[u]] ate'
+	 *         targets[offsets[u + 1] - 1]. Retorna null em caso de erro.
+	 */
+	public Tuple2<int[], int[]> readGraphMapped(String fileName) {
+		RandomAccessFile file = null;
+		try {
+			try {
+				file = new RandomAccessFile(fileName, "r");
+				FileChannel channel = file.getChannel();
+				long size = channel.size();
+				IntList offsets = new IntList();
+				IntList targets = new IntList();
+				AdjacencyParser parser = new AdjacencyParser(offsets, targets);
+				long pos = 0;
+				long window = MAP_WINDOW;
+				while (pos < size) {
+					long length = java.lang.Math.min(window, size - pos);
+					MappedByteBuffer buf = channel.map(
+							FileChannel.MapMode.READ_ONLY, pos, length);
+					int end = (int) length;
+					if (pos + length < size) {
+						// Termina a janela na ultima quebra de linha
+						end = this.lastLineBreak(buf, end) + 1;
+						if (end == 0) {
+							// Linha maior que a janela; a janela nao pode
+							// passar de Integer.MAX_VALUE bytes
+							if (window >= Integer.MAX_VALUE) {
+								System.out.println("Linha invalida: maior que "
+										+ Integer.MAX_VALUE + " bytes (linha "
+										+ (parser.getLineCount() + 1) + ")");
+								return null;
+							}
+							window = java.lang.Math.min(window * 2,
+									Integer.MAX_VALUE);
+							continue;
+						}
+					}
+					if (!parser.parse(buf, end)) {
+						System.out.println("Linha invalida: "
+								+ parser.getErrorLine());
+						return null;
+					}
+					pos += end;
+				}
+				offsets.add(targets.size());
+				return new Tuple2<int[], int[]>(offsets.toArray(),
+						targets.toArray());
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		} finally {
+			try {
+				if (file != null)
+					file.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Faz a leitura do arquivo de entrada em paralelo. O arquivo e' dividido em
+	 * trechos que terminam em fim de linha; cada trecho e' mapeado em memoria e
+	 * interpretado por uma thread e, ao final, os trechos sao concatenados na
+	 * ordem do arquivo. O resultado e' identico ao de
+	 * {@link #readGraphMapped(String)}, e uma linha invalida e' reportada com o
+	 * seu numero no arquivo.
+	 * 
+	 * Durante a concatenacao, os vetores de cada trecho e os vetores finais
+	 * coexistem em memoria.
+	 * 
+	 * @param threads
+	 *            Numero de threads.
+	 * @return Tupla com os vetores CSR (offsets, targets) ou null em caso de
+	 *         erro.
+	 */
+	public Tuple2<int[], int[]> readGraphParallel(String fileName, int threads) {
+		RandomAccessFile file = null;
+		ExecutorService pool = null;
+		try {
+			try {
+				file = new RandomAccessFile(fileName, "r");
+				final FileChannel channel = file.getChannel();
+				long[] bounds = this.splitChunks(channel, threads
+						* CHUNKS_PER_THREAD);
+				pool = Executors.newFixedThreadPool(threads);
+				List<Future<AdjacencyParser>> futures = new ArrayList<Future<AdjacencyParser>>();
+				for (int i = 0; i + 1 < bounds.length; i++) {
+					final long start = bounds[i];
+					final int length = (int) (bounds[i + 1] - start);
+					futures.add(pool.submit(new Callable<AdjacencyParser>() {
+						@Override
+						public AdjacencyParser call() throws IOException {
+							AdjacencyParser parser = new AdjacencyParser(
+									new IntList(), new IntList());
+							parser.parse(channel.map(
+									FileChannel.MapMode.READ_ONLY, start,
+									length), length);
+							return parser;
+						}
+					}));
+				}
+				AdjacencyParser[] parsers = new AdjacencyParser[futures.size()];
+				for (int i = 0; i < parsers.length; i++)
+					parsers[i] = futures.get(i).get();
+				return this.mergeChunks(parsers, pool);
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		} finally {
+			if (pool != null)
+				pool.shutdown();
+			try {
+				if (file != null)
+					file.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Divide o arquivo em aproximadamente count trechos que terminam
+	 * imediatamente apos um '\n' ou no final do arquivo.
+	 * 
+	 * @return Posicoes de inicio de cada trecho, seguidas do tamanho do
+	 *         arquivo.
+	 */
+	private long[] splitChunks(FileChannel channel, int count)
+			throws IOException {
+		long size = channel.size();
+		long chunk = java.lang.Math.min(
+				java.lang.Math.max(size / count, MIN_CHUNK), MAP_WINDOW);
+		ArrayList<Long> bounds = new ArrayList<Long>();
+		long pos = 0;
+		bounds.add(pos);
+		while (pos < size) {
+			long next = (size - pos <= chunk) ? size : this.nextLineStart(
+					channel, pos + chunk, size);
+			if (next - pos > Integer.MAX_VALUE)
+				throw new IOException("Linha muito longa a partir da posicao "
+						+ pos + ".");
+			bounds.add(next);
+			pos = next;
+		}
+		long[] ret = new long[bounds.size()];
+		for (int i = 0; i < ret.length; i++)
+			ret[i] = bounds.get(i);
+		return ret;
+	}
+
+	/**
+	 * @return Posicao seguinte ao primeiro '\n' a partir de pos, ou o tamanho
+	 *         do arquivo se nao houver.
+	 */
+	private long nextLineStart(FileChannel channel, long pos, long size)
+			throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(1 << 16);
+		while (pos < size) {
+			buf.clear();
+			int read = channel.read(buf, pos);
+			if (read <= 0)
+				break;
+			for (int i = 0; i < read; i++) {
+				if (buf.get(i) == '\n')
+					return pos + i + 1;
+			}
+			pos += read;
+		}
+		return size;
+	}
+
+	/**
+	 * Concatena os trechos lidos, em paralelo, ou reporta a primeira linha
+	 * invalida do arquivo.
+	 * 
+	 * @return Tupla com os vetores CSR (offsets, targets) ou null em caso de
+	 *         linha invalida.
+	 */
+	private Tuple2<int[], int[]> mergeChunks(AdjacencyParser[] parsers,
+			ExecutorService pool) throws Exception {
+		long lines = 0;
+		long vertexCount = 0;
+		long edgeCount = 0;
+		final int[] vertexBase = new int[parsers.length];
+		final int[] edgeBase = new int[parsers.length];
+		for (int i = 0; i < parsers.length; i++) {
+			if (parsers[i].getErrorLine() != null) {
+				System.out.println("Linha invalida: "
+						+ parsers[i].getErrorLine() + " (linha "
+						+ (lines + parsers[i].getLineCount()) + ")");
+				return null;
+			}
+			lines += parsers[i].getLineCount();
+			vertexBase[i] = (int) vertexCount;
+			edgeBase[i] = (int) edgeCount;
+			vertexCount += parsers[i].getOffsets().size();
+			edgeCount += parsers[i].getTargets().size();
+			if (vertexCount >= Integer.MAX_VALUE
+					|| edgeCount > Integer.MAX_VALUE - 8)
+				throw new IOException("Grafo muito grande.");
+		}
+		final int[] offsets = new int[(int) vertexCount + 1];
+		final int[] targets = new int[(int) edgeCount];
+		offsets[(int) vertexCount] = (int) edgeCount;
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		for (int i = 0; i < parsers.length; i++) {
+			final int c = i;
+			final IntList chunkOffsets = parsers[i].getOffsets();
+			final IntList chunkTargets = parsers[i].getTargets();
+			futures.add(pool.submit(new Runnable() {
+				@Override
+				public void run() {
+					for (int j = 0; j < chunkOffsets.size(); j++)
+						offsets[vertexBase[c] + j] = edgeBase[c]
+								+ chunkOffsets.get(j);
+					chunkTargets.copyTo(targets, edgeBase[c]);
+				}
+			}));
+		}
+		for (int i = 0; i < futures.size(); i++)
+			futures.get(i).get();
+		return new Tuple2<int[], int[]>(offsets, targets);
+	}
+
+	/**
+	 * @return Posicao da ultima quebra de linha em buf[0, end) ou -1.
+	 */
+	private int lastLineBreak(MappedByteBuffer buf, int end) {
+		for (int i = end - 1; i >= 0; i--) {
+			byte c = buf.get(i);
+			// Um '\r' no final da janela pode ser parte de "\r\n"
+			if (c == '\n' || (c == '\r' && i < end - 1))
+				return i;
+		}
+		return -1;
+	}
+
 	/**
 	 * Verifica se uma dada linha do arquivo e' valida.
 	 * 
@@ -105,11 +386,10 @@ public class GraphReader {
 	 * @return Array de inteiros correspondendo a lista de adjacencia da linha.
 	 */
 	private ArrayList<Integer> validateLineGraph(String line) {
-		String[] s = line.split(" ");
 		ArrayList<Integer> ret = null;
 		try {
 			String[] values = line.split(" ");
-			if (s.length > 0) {
+			if (values.length > 0) {
 				ret = new ArrayList<Integer>(values.length);
 				// Varre a linha a partir do segundo elemento, pois o primeiro
 				// e' o indicador do vertice.
@@ -118,6 +398,8 @@ public class GraphReader {
 				}
 			}
 		} catch (Exception ex) {
+			// Linha invalida: descarta os vizinhos ja' lidos
+			ret = null;
 		}
 		return ret;
 	}
@@ -0,0 +1,138 @@
+package br.ufmg.dcc.paa.tp2.util;
+
+import java.util.Arrays;
+
+/**
+ * Heap de maximo indexado sobre os inteiros [0, n), com chaves double. A
+ * posicao de cada elemento no heap e' mantida num vetor, o que permite
+ * alterar a chave ou remover um elemento qualquer em O(log n), sem objetos
+ * por elemento.
+ * 
+ * @author Wilson de Carvalho
+ */
+public class IndexedHeap {
+	private final int[] heap;
+	// Posicao de cada elemento em heap, ou -1 se nao estiver no heap
+	private final int[] pos;
+	private final double[] keys;
+	private int size = 0;
+
+	/**
+	 * @param capacity
+	 *            Numero de elementos possiveis, identificados por 0 a
+	 *            capacity-1.
+	 */
+	public IndexedHeap(int capacity) {
+		this.heap = new int[capacity];
+		this.pos = new int[capacity];
+		this.keys = new double[capacity];
+		Arrays.fill(pos, -1);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public boolean contains(int e) {
+		return pos[e] >= 0;
+	}
+
+	/**
+	 * @return Chave do elemento, valida apenas se ele estiver no heap.
+	 */
+	public double key(int e) {
+		return keys[e];
+	}
+
+	/**
+	 * @return Elemento de maior chave. Custo: O(1)
+	 */
+	public int peek() {
+		return heap[0];
+	}
+
+	/**
+	 * Insere o elemento ou altera a sua chave, se ja' estiver no heap.
+	 * Custo: O(log n)
+	 */
+	public void put(int e, double key) {
+		if (pos[e] < 0) {
+			heap[size] = e;
+			pos[e] = size;
+			keys[e] = key;
+			this.siftUp(size++);
+		} else {
+			double old = keys[e];
+			keys[e] = key;
+			if (key > old)
+				this.siftUp(pos[e]);
+			else
+				this.siftDown(pos[e]);
+		}
+	}
+
+	/**
+	 * Remove e retorna o elemento de maior chave. Custo: O(log n)
+	 */
+	public int poll() {
+		int top = heap[0];
+		this.remove(top);
+		return top;
+	}
+
+	/**
+	 * Remove o elemento, se estiver no heap. Custo: O(log n)
+	 */
+	public void remove(int e) {
+		int i = pos[e];
+		if (i < 0)
+			return;
+		pos[e] = -1;
+		size--;
+		if (i == size)
+			return;
+		int last = heap[size];
+		heap[i] = last;
+		pos[last] = i;
+		this.siftUp(i);
+		this.siftDown(pos[last]);
+	}
+
+	private void siftUp(int i) {
+		int e = heap[i];
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			int p = heap[parent];
+			if (keys[p] >= keys[e])
+				break;
+			heap[i] = p;
+			pos[p] = i;
+			i = parent;
+		}
+		heap[i] = e;
+		pos[e] = i;
+	}
+
+	private void siftDown(int i) {
+		int e = heap[i];
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= size)
+				break;
+			if (child + 1 < size && keys[heap[child + 1]] > keys[heap[child]])
+				child++;
+			int c = heap[child];
+			if (keys[c] <= keys[e])
+				break;
+			heap[i] = c;
+			pos[c] = i;
+			i = child;
+		}
+		heap[i] = e;
+		pos[e] = i;
+	}
+}
@@ -0,0 +1,81 @@
+package br.ufmg.dcc.paa.tp2.util;
+
+import java.util.Arrays;
+
+/**
+ * Lista de inteiros primitivos com crescimento automatico, evitando o custo
+ * de um Integer por elemento de ArrayList<Integer>.
+ * 
+ * @author Wilson de Carvalho
+ */
+public class IntList {
+	private int[] values;
+	private int size = 0;
+
+	public IntList() {
+		this(16);
+	}
+
+	/**
+	 * @param capacity
+	 *            Capacidade inicial.
+	 */
+	public IntList(int capacity) {
+		this.values = new int[java.lang.Math.max(capacity, 1)];
+	}
+
+	/**
+	 * Adiciona um valor ao final da lista. Custo amortizado: O(1)
+	 */
+	public void add(int value) {
+		if (size == values.length) {
+			// Cresce 50%, limitado ao maior vetor possivel
+			int capacity = (int) java.lang.Math.min(
+					(long) size + (size >> 1) + 1, Integer.MAX_VALUE - 8);
+			if (capacity <= size)
+				throw new OutOfMemoryError("Lista de inteiros muito grande.");
+			values = Arrays.copyOf(values, capacity);
+		}
+		values[size++] = value;
+	}
+
+	public int get(int i) {
+		if (i >= size)
+			throw new IndexOutOfBoundsException("Indice: " + i
+					+ ", tamanho: " + size);
+		return values[i];
+	}
+
+	public void set(int i, int value) {
+		if (i >= size)
+			throw new IndexOutOfBoundsException("Indice: " + i
+					+ ", tamanho: " + size);
+		values[i] = value;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * Copia os elementos da lista para dest, a partir de destPos.
+	 */
+	public void copyTo(int[] dest, int destPos) {
+		System.arraycopy(values, 0, dest, destPos, size);
+	}
+
+	/**
+	 * Retorna um vetor com exatamente os elementos da lista. Custo: Theta(n)
+	 */
+	public int[] toArray() {
+		return Arrays.copyOf(values, size);
+	}
+}
@@ -19,7 +19,10 @@ public class Math {
 	 *            Numero menor
 	 * @return Resultado da divisao entre os dois numeros. Caso n1 seja menor
 	 *         que n2, retorna -1.
+	 * @deprecated O produto estoura int para n1 acima de ~46 mil quando n2 =
+	 *             n1 - 2. Para contar pares, use {@link #pairs(int)}.
 	 */
+	@Deprecated
 	public static int simplifyFactorialDivision(int n1, int n2) {
 		if (n2 > n1)
 			return -1;
@@ -29,4 +32,54 @@ public class Math {
 		}
 		return ret;
 	}
+
+	/**
+	 * Numero de pares nao ordenados que podem ser formados com n elementos,
+	 * C(n, 2) = n(n-1)/2, sem laco e sem estouro para qualquer n inteiro.
+	 * 
+	 * Custo: O(1)
+	 * 
+	 * @param n
+	 *            Numero de elementos.
+	 * @return Numero de pares, ou 0 se n < 2.
+	 */
+	public static long pairs(int n) {
+		if (n < 2)
+			return 0;
+		return (long) n * (n - 1) / 2;
+	}
+
+	/**
+	 * Acumulador com compensacao de Kahan, para somar muitas parcelas
+	 * pequenas (como os coeficientes de agrupamento locais) sem perder
+	 * precisao. Nao aloca memoria a cada parcela.
+	 */
+	public static class KahanSum {
+		private double sum = 0;
+		// Parte baixa perdida na ultima soma
+		private double compensation = 0;
+
+		/**
+		 * Soma uma parcela. Custo: O(1)
+		 */
+		public void add(double value) {
+			double y = value - compensation;
+			double t = sum + y;
+			compensation = (t - sum) - y;
+			sum = t;
+		}
+
+		public double getSum() {
+			return sum;
+		}
+
+		/**
+		 * @return Media das parcelas, ou 0 se count for 0.
+		 */
+		public double mean(long count) {
+			if (count == 0)
+				return 0;
+			return sum / count;
+		}
+	}
 }
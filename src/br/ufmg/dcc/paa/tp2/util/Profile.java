@@ -0,0 +1,140 @@
+package br.ufmg.dcc.paa.tp2.util;
+
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Registro leve de medidas de desempenho: tempo (System.nanoTime) e bytes
+ * alocados de cada fase, e contadores nomeados. Os valores sao acumulados
+ * entre chamadas da mesma fase e gravados num arquivo texto, um valor por
+ * linha no formato "nome valor", na ordem em que foram registrados.
+ * 
+ * Os bytes alocados sao lidos do ThreadMXBean da JVM HotSpot e se referem
+ * apenas a' thread que inicia e encerra a medicao; em JVMs sem esse recurso,
+ * nao sao registrados. Fases executadas em outras threads devem ser medidas
+ * com {@link #startTimeOnly(String)} e ter os bytes de cada thread somados
+ * com {@link #add(String, long)}, a partir de {@link #allocatedBytes()}. Os
+ * metodos sao sincronizados, de modo que varias threads podem registrar no
+ * mesmo objeto; nos lacos criticos, os contadores devem ser acumulados em
+ * variaveis locais e registrados uma unica vez.
+ * 
+ * @author Wilson de Carvalho
+ */
+public class Profile {
+	private static final java.lang.management.ThreadMXBean THREADS = ManagementFactory
+			.getThreadMXBean();
+
+	private final LinkedHashMap<String, Long> values = new LinkedHashMap<String, Long>();
+
+	/**
+	 * Medicao de uma fase em andamento.
+	 */
+	public class Timer {
+		private final String phase;
+		private final long startNanos;
+		private final long startBytes;
+
+		private Timer(String phase, boolean measureBytes) {
+			this.phase = phase;
+			this.startBytes = measureBytes ? allocatedBytes() : -1;
+			this.startNanos = System.nanoTime();
+		}
+
+		/**
+		 * Encerra a medicao e acumula o tempo, os bytes alocados e o numero
+		 * de chamadas da fase.
+		 */
+		public void stop() {
+			long nanos = System.nanoTime() - startNanos;
+			long bytes = (startBytes >= 0) ? allocatedBytes() : -1;
+			add(phase + ".calls", 1);
+			add(phase + ".ns", nanos);
+			if (bytes >= 0)
+				add(phase + ".bytes", bytes - startBytes);
+		}
+	}
+
+	/**
+	 * Inicia a medicao de uma fase.
+	 * 
+	 * @param phase
+	 *            Nome da fase.
+	 * @return Medicao, encerrada com {@link Timer#stop()}.
+	 */
+	public Timer start(String phase) {
+		return new Timer(phase, true);
+	}
+
+	/**
+	 * Inicia a medicao de uma fase executada em outras threads, registrando
+	 * apenas o tempo e o numero de chamadas: os bytes da thread atual nao
+	 * representariam a fase.
+	 * 
+	 * @param phase
+	 *            Nome da fase.
+	 * @return Medicao, encerrada com {@link Timer#stop()}.
+	 */
+	public Timer startTimeOnly(String phase) {
+		return new Timer(phase, false);
+	}
+
+	/**
+	 * Soma delta ao contador, criando-o com zero se necessario.
+	 */
+	public synchronized void add(String name, long delta) {
+		Long old = values.get(name);
+		values.put(name, (old == null) ? delta : old + delta);
+	}
+
+	/**
+	 * @return Valor do contador, ou 0 se ainda nao tiver sido registrado.
+	 */
+	public synchronized long get(String name) {
+		Long value = values.get(name);
+		return (value == null) ? 0 : value;
+	}
+
+	/**
+	 * Salva os valores num arquivo, um por linha no formato "nome valor".
+	 * 
+	 * @param fileName
+	 *            Nome do arquivo.
+	 */
+	public synchronized void saveToFile(String fileName) {
+		PrintWriter writer = null;
+		try {
+			try {
+				writer = new PrintWriter(fileName, "UTF-8");
+				Iterator<Map.Entry<String, Long>> itr = values.entrySet()
+						.iterator();
+				while (itr.hasNext()) {
+					Map.Entry<String, Long> e = itr.next();
+					writer.println(e.getKey() + " " + e.getValue());
+				}
+			} catch (Exception ex) {
+				ex.printStackTrace();
+			}
+		} finally {
+			if (writer != null)
+				writer.close();
+		}
+	}
+
+	/**
+	 * @return Bytes alocados ate' agora pela thread atual, ou -1 se a JVM nao
+	 *         oferecer a medida.
+	 */
+	public static long allocatedBytes() {
+		if (THREADS instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+			if (threads.isThreadAllocatedMemorySupported()
+					&& threads.isThreadAllocatedMemoryEnabled())
+				return threads.getThreadAllocatedBytes(Thread.currentThread()
+						.getId());
+		}
+		return -1;
+	}
+}